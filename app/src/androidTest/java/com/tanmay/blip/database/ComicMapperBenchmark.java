@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.database;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the old positional cursor-to-Comic copy with {@link DatabaseManager.ComicMapper} over a
+ * synthetic archive. Results are written to logcat under the "ComicMapperBenchmark" tag.
+ */
+public class ComicMapperBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "ComicMapperBenchmark";
+    private static final String TEST_DB = "XKCD_mapper_benchmark";
+    private static final int ARCHIVE_SIZE = 2000;
+    private static final int ROUNDS = 5;
+
+    private DatabaseManager databaseManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        databaseManager = ScratchDatabase.open(getContext(), TEST_DB);
+
+        StringBuilder transcript = new StringBuilder();
+        while (transcript.length() < 1500) {
+            transcript.append("[[A man stands next to a whiteboard.]] ");
+        }
+        List<Comic> comics = new ArrayList<>(ARCHIVE_SIZE);
+        for (int num = 1; num <= ARCHIVE_SIZE; num++) {
+            Comic comic = ScratchDatabase.comic(num);
+            comic.setAlt("Alt text for comic " + num + " which is usually a sentence or two long.");
+            comic.setTranscript(transcript.toString());
+            comic.setDay(String.valueOf(num % 28 + 1));
+            comic.setMonth(String.valueOf(num % 12 + 1));
+            comic.setYear(String.valueOf(2006 + num / 200));
+            comics.add(comic);
+        }
+        databaseManager.upsertComics(comics);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ScratchDatabase.delete(getContext(), databaseManager, TEST_DB);
+        super.tearDown();
+    }
+
+    public void testMappingThroughput() {
+        long positional = Long.MAX_VALUE;
+        long mapperFull = Long.MAX_VALUE;
+        long mapperSummary = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            positional = Math.min(positional, timePositional());
+            mapperFull = Math.min(mapperFull, timeMapperFull());
+            mapperSummary = Math.min(mapperSummary, timeMapperSummary());
+        }
+        Log.i(TAG, "positional SELECT *: " + report(positional));
+        Log.i(TAG, "ComicMapper SELECT *: " + report(mapperFull));
+        Log.i(TAG, "ComicMapper summary projection: " + report(mapperSummary));
+    }
+
+    private long timePositional() {
+        long start = System.nanoTime();
+        Cursor cursor = databaseManager.getReadableDatabase().rawQuery("SELECT * FROM XKCD_Table", null);
+        List<Comic> comics = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            do {
+                Comic comic = new Comic();
+                comic.setMonth(cursor.getString(0));
+                comic.setNum(cursor.getInt(1));
+                comic.setLink(cursor.getString(2));
+                comic.setYear(cursor.getString(3));
+                comic.setNews(cursor.getString(4));
+                comic.setSafe_title(cursor.getString(5));
+                comic.setTranscript(cursor.getString(6));
+                comic.setAlt(cursor.getString(7));
+                comic.setImg(cursor.getString(8));
+                comic.setTitle(cursor.getString(9));
+                comic.setDay(cursor.getString(10));
+                comic.setFavourite(cursor.getInt(11) == 1);
+                comics.add(comic);
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ARCHIVE_SIZE, comics.size());
+        return elapsed;
+    }
+
+    private long timeMapperFull() {
+        long start = System.nanoTime();
+        List<Comic> comics = databaseManager.getAllComics();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ARCHIVE_SIZE, comics.size());
+        return elapsed;
+    }
+
+    private long timeMapperSummary() {
+        long start = System.nanoTime();
+        Cursor cursor = databaseManager.getReadableDatabase().rawQuery("SELECT num, title, alt, img, date, fav FROM XKCD_Table", null);
+        List<ComicSummary> comics = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            DatabaseManager.ComicMapper mapper = new DatabaseManager.ComicMapper(cursor);
+            do {
+                comics.add(mapper.toSummary());
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ARCHIVE_SIZE, comics.size());
+        return elapsed;
+    }
+
+    private static String report(long nanos) {
+        return String.format("%.1f ms, %.0f rows/s", nanos / 1e6, ARCHIVE_SIZE / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.database;
+
+import android.test.AndroidTestCase;
+
+import com.tanmay.blip.models.Comic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DatabaseManagerStressTest extends AndroidTestCase {
+
+    private static final String TEST_DB = "XKCD_stress_test";
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int COMICS_PER_WRITER = 500;
+    private static final int BATCH = 25;
+
+    private DatabaseManager databaseManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        databaseManager = ScratchDatabase.open(getContext(), TEST_DB);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ScratchDatabase.delete(getContext(), databaseManager, TEST_DB);
+        super.tearDown();
+    }
+
+    public void testConcurrentReadersAndWritersLoseNothing() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        final CountDownLatch readersDone = new CountDownLatch(READERS);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int first = w * COMICS_PER_WRITER + 1;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        List<Comic> batch = new ArrayList<>();
+                        for (int num = first; num < first + COMICS_PER_WRITER; num++) {
+                            batch.add(ScratchDatabase.comic(num));
+                            if (batch.size() == BATCH) {
+                                databaseManager.upsertComics(batch);
+                                batch = new ArrayList<>();
+                            }
+                        }
+                        databaseManager.upsertComics(batch);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (writersDone.getCount() > 0) {
+                            databaseManager.getFeedPage(Integer.MAX_VALUE, 20);
+                            databaseManager.search("comic");
+                            databaseManager.getFavourites();
+                            databaseManager.getCount();
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(writersDone.await(2, TimeUnit.MINUTES));
+        assertTrue(readersDone.await(1, TimeUnit.MINUTES));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(WRITERS * COMICS_PER_WRITER, databaseManager.getCount());
+        assertEquals(WRITERS * COMICS_PER_WRITER, databaseManager.getMax());
+        for (int num = 1; num <= WRITERS * COMICS_PER_WRITER; num += 97) {
+            Comic stored = databaseManager.getComic(num);
+            assertNotNull(stored);
+            assertEquals("Comic " + num, stored.getTitle());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
+import com.tanmay.blip.models.TranscriptCheck;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DatabaseManagerTest extends AndroidTestCase {
+
+    private static final String TEST_DB = "XKCD_test";
+
+    private DatabaseManager databaseManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        databaseManager = ScratchDatabase.open(getContext(), TEST_DB);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ScratchDatabase.delete(getContext(), databaseManager, TEST_DB);
+        super.tearDown();
+    }
+
+    public void testMissingNumsSkipStoredAndUnavailable() throws Exception {
+        databaseManager.upsertComics(Arrays.asList(ScratchDatabase.comic(2), ScratchDatabase.comic(5)));
+        databaseManager.markUnavailable(4, "not found", TimeUnit.DAYS.toMillis(1));
+        assertEquals(Arrays.asList(1, 3, 6), databaseManager.getMissingNums(1, 6));
+    }
+
+    public void testExpiredUnavailableNumIsMissingAgain() throws Exception {
+        databaseManager.markUnavailable(4, "malformed", -1);
+        assertNull(databaseManager.getUnavailableReason(4));
+        assertTrue(databaseManager.getUnavailableNums().isEmpty());
+        assertEquals(Arrays.asList(3, 4, 5), databaseManager.getMissingNums(3, 5));
+    }
+
+    public void testExpiredUnavailableNumsAreDueAgain() throws Exception {
+        databaseManager.markUnavailable(2, "malformed", -1);
+        databaseManager.markUnavailable(3, "not found", TimeUnit.DAYS.toMillis(1));
+        databaseManager.markUnavailable(4, "malformed", -1);
+        databaseManager.markUnavailable(9, "malformed", -1);
+        databaseManager.upsertComics(Collections.singletonList(ScratchDatabase.comic(4)));
+        assertEquals(Collections.singletonList(2), databaseManager.getExpiredUnavailableNums(5));
+    }
+
+    public void testUnavailableReasonIsKept() throws Exception {
+        databaseManager.markUnavailable(404, "not found", TimeUnit.DAYS.toMillis(1));
+        assertEquals("not found", databaseManager.getUnavailableReason(404));
+        assertEquals(Collections.singleton(404), databaseManager.getUnavailableNums());
+    }
+
+    public void testSkeletonsAreMissingUntilFilledIn() throws Exception {
+        databaseManager.upsertComic(ScratchDatabase.comic(1));
+        Comic skeleton = new Comic();
+        skeleton.setNum(2);
+        skeleton.setTitle("Skeleton");
+        Comic stored = new Comic();
+        stored.setNum(1);
+        stored.setTitle("Overwritten");
+
+        assertEquals(1, databaseManager.insertSkeletons(Arrays.asList(stored, skeleton)));
+        assertEquals("Comic 1", databaseManager.getComic(1).getTitle());
+        assertEquals(1, databaseManager.getSkeletonCount());
+        assertEquals(Collections.singletonList(2), databaseManager.getMissingNums(1, 2));
+
+        databaseManager.upsertComic(ScratchDatabase.comic(2));
+        assertEquals(0, databaseManager.getSkeletonCount());
+        assertTrue(databaseManager.getMissingNums(1, 2).isEmpty());
+    }
+
+    public void testRandomNumSkipsUnavailable() throws Exception {
+        databaseManager.upsertComics(Arrays.asList(ScratchDatabase.comic(1), ScratchDatabase.comic(3)));
+        databaseManager.markUnavailable(2, "not found", TimeUnit.DAYS.toMillis(1));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(databaseManager.getRandomNum() != 2);
+        }
+    }
+
+    public void testTranscriptChecksFollowTheirSchedule() throws Exception {
+        Comic withTranscript = ScratchDatabase.comic(3);
+        withTranscript.setTranscript("[[A transcript.]]");
+        databaseManager.upsertComics(Arrays.asList(ScratchDatabase.comic(1), ScratchDatabase.comic(2), withTranscript));
+        long now = System.currentTimeMillis();
+        databaseManager.recordTranscriptCheck(1, 2, "empty", now, now + TimeUnit.DAYS.toMillis(14));
+
+        List<TranscriptCheck> due = databaseManager.getTranscriptChecksDue(now, 10);
+        assertEquals(1, due.size());
+        assertEquals(2, due.get(0).getNum());
+        assertEquals(0, due.get(0).getAttempts());
+        assertEquals(20150101, due.get(0).getDate());
+
+        due = databaseManager.getTranscriptChecksDue(now + TimeUnit.DAYS.toMillis(15), 10);
+        assertEquals(2, due.size());
+        assertEquals(1, due.get(1).getNum());
+        assertEquals(2, due.get(1).getAttempts());
+        assertEquals(1, databaseManager.getTranscriptChecksDue(now + TimeUnit.DAYS.toMillis(15), 1).size());
+    }
+
+    public void testUpsertKeepsFavourite() throws Exception {
+        databaseManager.upsertComic(ScratchDatabase.comic(1));
+        databaseManager.setFavourite(1, true);
+
+        Comic updated = ScratchDatabase.comic(1);
+        updated.setTitle("Renamed");
+        updated.setFavourite(false);
+        databaseManager.upsertComic(updated);
+
+        Comic stored = databaseManager.getComic(1);
+        assertEquals("Renamed", stored.getTitle());
+        assertTrue(stored.isFavourite());
+        assertEquals(1, databaseManager.getFavourites().size());
+    }
+
+    public void testUpsertReplacesSearchText() throws Exception {
+        Comic comic = ScratchDatabase.comic(1);
+        comic.setTitle("Hypothesis");
+        databaseManager.upsertComic(comic);
+        comic.setTitle("Conclusion");
+        databaseManager.upsertComic(comic);
+
+        assertTrue(databaseManager.search("hypothesis").isEmpty());
+        List<ComicSummary> results = databaseManager.search("conclusion");
+        assertEquals(1, results.size());
+        assertEquals("Conclusion", results.get(0).getTitle());
+    }
+
+    public void testSearchFindsTitleAltAndTranscript() throws Exception {
+        Comic inTitle = ScratchDatabase.comic(1);
+        inTitle.setTitle("Velociraptors");
+        Comic inAlt = ScratchDatabase.comic(2);
+        inAlt.setAlt("Beware of velociraptors");
+        Comic inTranscript = ScratchDatabase.comic(3);
+        inTranscript.setTranscript("[[A velociraptor appears.]]");
+        databaseManager.upsertComics(Arrays.asList(inTitle, inAlt, inTranscript, ScratchDatabase.comic(4)));
+
+        List<ComicSummary> results = databaseManager.search("velociraptor");
+        assertEquals(3, results.size());
+        // Title hits weigh most, then alt, then transcript
+        assertEquals(1, results.get(0).getNum());
+        assertEquals(2, results.get(1).getNum());
+        assertEquals(3, results.get(2).getNum());
+    }
+
+    public void testFavouriteKeepsComicSearchable() throws Exception {
+        Comic comic = ScratchDatabase.comic(1);
+        comic.setTitle("Bookmark");
+        databaseManager.upsertComic(comic);
+        databaseManager.setFavourite(1, true);
+        databaseManager.setFavourite(1, false);
+
+        assertEquals(1, databaseManager.search("bookmark").size());
+    }
+
+    public void testSearchIndexFollowsReplacedRows() throws Exception {
+        Comic comic = ScratchDatabase.comic(1);
+        comic.setAlt("Old words");
+        databaseManager.upsertComic(comic);
+        comic.setAlt("New words");
+        databaseManager.upsertComic(comic);
+
+        assertTrue(databaseManager.search("old").isEmpty());
+        assertEquals(1, databaseManager.search("new").size());
+        assertEquals(1, databaseManager.search("words").size());
+    }
+
+    public void testUpgradeFromFirstVersionKeepsComics() throws Exception {
+        databaseManager.close();
+        getContext().deleteDatabase(TEST_DB);
+        getContext().getDatabasePath(TEST_DB).getParentFile().mkdirs();
+        SQLiteDatabase old = SQLiteDatabase.openOrCreateDatabase(getContext().getDatabasePath(TEST_DB), null);
+        old.execSQL("CREATE TABLE XKCD_Table(month TEXT,num INTEGER PRIMARY KEY,link TEXT,year TEXT,news TEXT," +
+                "safe_title TEXT,transcript TEXT,alt TEXT,img TEXT,title TEXT,day TEXT,fav INTEGER)");
+        old.execSQL("INSERT INTO XKCD_Table VALUES ('3','1','','2006','','Barrel','','Don''t we all.','barrel.jpg','Barrel','1',0)");
+        old.execSQL("INSERT INTO XKCD_Table VALUES ('12','2','','2006','','Petit Trees','','Tree','trees.jpg','Petit Trees','25',1)");
+        old.setVersion(1);
+        old.close();
+
+        databaseManager = new DatabaseManager(getContext(), TEST_DB);
+        assertEquals(2, databaseManager.getCount());
+        assertFalse(databaseManager.getComic(1).isFavourite());
+        assertTrue(databaseManager.getComic(2).isFavourite());
+        assertEquals(20060301, databaseManager.getComicSummary(1).getDate());
+        assertEquals(20061225, databaseManager.getComicSummary(2).getDate());
+
+        Cursor cursor = databaseManager.getReadableDatabase().rawQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND name IN ('XKCD_Table_fav', 'XKCD_Table_date')", null);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+
+        // The search index only follows edits to the columns it covers
+        cursor = databaseManager.getReadableDatabase().rawQuery(
+                "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name IN ('XKCD_Search_bu', 'XKCD_Search_au')", null);
+        assertEquals(2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertTrue(cursor.getString(0), cursor.getString(0).contains("UPDATE OF title,safe_title,alt,transcript ON"));
+        }
+        cursor.close();
+
+        assertEquals(1, databaseManager.search("barrel").size());
+        assertEquals(2, databaseManager.search("trees").get(0).getNum());
+    }
+}
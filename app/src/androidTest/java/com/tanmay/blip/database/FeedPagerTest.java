@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.database;
+
+import android.test.AndroidTestCase;
+
+import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class FeedPagerTest extends AndroidTestCase {
+
+    private static final String TEST_DB = "XKCD_feed_test";
+    private static final int COMICS = 100;
+    private static final int MISSING = 50;
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 2;
+    private static final int RESET = -1;
+
+    private final BlockingQueue<Integer> events = new LinkedBlockingQueue<>();
+    private final List<int[]> inserted = new ArrayList<>();
+    private QueryRunner queries;
+    private FeedPager pager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScratchDatabase.install(getContext(), TEST_DB);
+        List<Comic> comics = new ArrayList<>();
+        for (int num = 1; num <= COMICS; num++) {
+            if (num != MISSING) {
+                comics.add(ScratchDatabase.comic(num));
+            }
+        }
+        DatabaseManager.getInstance().upsertComics(comics);
+
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                queries = new QueryRunner();
+                pager = new FeedPager(queries, PAGE_SIZE, MAX_PAGES, new FeedPager.Listener() {
+                    @Override
+                    public void onReset() {
+                        events.add(RESET);
+                    }
+
+                    @Override
+                    public void onRangeLoaded(int start, int count) {
+                        events.add(start);
+                    }
+
+                    @Override
+                    public void onRangeInserted(int start, int count) {
+                        inserted.add(new int[]{start, count});
+                    }
+
+                    @Override
+                    public void onItemChanged(int position) {
+                    }
+                });
+                pager.load();
+            }
+        });
+        assertEquals(RESET, next());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                queries.cancelAll();
+            }
+        });
+        ScratchDatabase.uninstall(getContext(), TEST_DB);
+        super.tearDown();
+    }
+
+    public void testPositionOfFollowsNewestFirstOrder() throws Exception {
+        assertEquals(COMICS - 1, (int) size());
+        assertEquals(0, pager.positionOf(COMICS));
+        assertEquals(COMICS - MISSING - 1, pager.positionOf(MISSING + 1));
+        assertEquals(COMICS - MISSING, pager.positionOf(MISSING - 1));
+        assertEquals(COMICS - 2, pager.positionOf(1));
+        assertEquals(-1, pager.positionOf(MISSING));
+        assertEquals(-1, pager.positionOf(COMICS + 1));
+    }
+
+    public void testFarPagesAreEvictedAndReloaded() throws Exception {
+        // Offsets in the middle of a page, so nothing around them is prefetched
+        assertNull(get(10));
+        assertEquals(0, next());
+        assertEquals(COMICS - 10, get(10).getNum());
+
+        assertNull(get(50));
+        assertEquals(40, next());
+        assertNotNull(get(10));
+
+        assertNull(get(90));
+        assertEquals(80, next());
+        assertNotNull(get(50));
+        assertNotNull(get(90));
+
+        // The first page was farthest from the viewport and has to be loaded again
+        assertNull(get(10));
+        assertEquals(0, next());
+        assertEquals(COMICS - 10, get(10).getNum());
+        assertNotNull(get(50));
+        assertTrue(events.isEmpty());
+    }
+
+    public void testComicAddedAtHeadKeepsHeldRows() throws Exception {
+        assertNull(get(10));
+        assertEquals(0, next());
+        assertNull(get(50));
+        assertEquals(40, next());
+
+        final int newest = COMICS + 1;
+        DatabaseManager.getInstance().upsertComic(ScratchDatabase.comic(newest));
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                pager.insert(Collections.singleton(newest));
+                // Known comics are not inserted twice
+                pager.insert(Collections.singleton(COMICS));
+            }
+        });
+        assertEquals(1, inserted.size());
+        assertEquals(0, inserted.get(0)[0]);
+        assertEquals(1, inserted.get(0)[1]);
+        assertEquals(COMICS, (int) size());
+        assertEquals(0, pager.positionOf(newest));
+        assertEquals(1, pager.positionOf(COMICS));
+
+        // Held rows moved down one place without being loaded again, the new head loads on request
+        assertEquals(MISSING - 1, get(51).getNum());
+        assertEquals(COMICS - 10, get(11).getNum());
+        assertNull(get(0));
+        assertEquals(0, next());
+        assertEquals(newest, get(0).getNum());
+        assertTrue(events.isEmpty());
+    }
+
+    private ComicSummary get(final int position) throws Exception {
+        return MainThread.call(new Callable<ComicSummary>() {
+            @Override
+            public ComicSummary call() {
+                return pager.get(position);
+            }
+        });
+    }
+
+    private Integer size() throws Exception {
+        return MainThread.call(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pager.size();
+            }
+        });
+    }
+
+    private int next() throws Exception {
+        Integer event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        return event;
+    }
+}
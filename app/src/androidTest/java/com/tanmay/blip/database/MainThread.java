@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs test code on the main thread, for classes that may only be used from there.
+ */
+final class MainThread {
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private MainThread() {
+    }
+
+    static void run(final Runnable runnable) throws Exception {
+        call(new Callable<Void>() {
+            @Override
+            public Void call() {
+                runnable.run();
+                return null;
+            }
+        });
+    }
+
+    static <T> T call(final Callable<T> callable) throws Exception {
+        final AtomicReference<T> result = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(callable.call());
+                } catch (Exception e) {
+                    error.set(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("Main thread did not run the task in time");
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return result.get();
+    }
+}
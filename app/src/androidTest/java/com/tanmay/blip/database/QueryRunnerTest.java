@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.database;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class QueryRunnerTest extends AndroidTestCase {
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+
+    public void testNewerQueryWithSameKeySupersedesOlder() throws Exception {
+        final QueryRunner queries = new QueryRunner();
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                queries.run(blocker(), null);
+                queries.run("key", value(1), record());
+                queries.run("key", value(2), record());
+                queries.run("other", value(3), record());
+            }
+        });
+        gate.countDown();
+        drain();
+        assertEquals(Arrays.asList(2, 3), delivered);
+    }
+
+    public void testCancelAllDropsPendingCallbacks() throws Exception {
+        final QueryRunner blocking = new QueryRunner();
+        final QueryRunner queries = new QueryRunner();
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                blocking.run(blocker(), null);
+                queries.run("key", value(1), record());
+                queries.run(value(2), record());
+                queries.cancelAll();
+            }
+        });
+        gate.countDown();
+        drain();
+        assertTrue(delivered.isEmpty());
+    }
+
+    private QueryRunner.Query<Integer> blocker() {
+        return new QueryRunner.Query<Integer>() {
+            @Override
+            public Integer run(DatabaseManager databaseManager) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        };
+    }
+
+    private static QueryRunner.Query<Integer> value(final int value) {
+        return new QueryRunner.Query<Integer>() {
+            @Override
+            public Integer run(DatabaseManager databaseManager) {
+                return value;
+            }
+        };
+    }
+
+    private QueryRunner.Callback<Integer> record() {
+        return new QueryRunner.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                delivered.add(result);
+            }
+        };
+    }
+
+    /**
+     * Waits until everything submitted so far has run and had its callback delivered. Queries run in
+     * submission order and post their callbacks in that order, so a fresh runner's query is last.
+     */
+    private void drain() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final QueryRunner queries = new QueryRunner();
+        MainThread.run(new Runnable() {
+            @Override
+            public void run() {
+                queries.run(value(0), new QueryRunner.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer result) {
+                        done.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.database;
+
+import android.content.Context;
+
+import com.tanmay.blip.models.Comic;
+
+/**
+ * Scratch databases and sample comics shared by the tests, so none of them touch the user's archive.
+ */
+public final class ScratchDatabase {
+
+    private ScratchDatabase() {
+    }
+
+    /**
+     * @return a manager over an empty database with the given name, left over data from an earlier run removed
+     */
+    public static DatabaseManager open(Context context, String name) {
+        context.deleteDatabase(name);
+        return new DatabaseManager(context, name);
+    }
+
+    public static void delete(Context context, DatabaseManager databaseManager, String name) {
+        databaseManager.close();
+        context.deleteDatabase(name);
+    }
+
+    /**
+     * Points {@link DatabaseManager#getInstance()} at an empty database with the given name.
+     */
+    public static void install(Context context, String name) {
+        context.deleteDatabase(name);
+        DatabaseManager.create(context, name);
+    }
+
+    /**
+     * Deletes the database installed with {@link #install(Context, String)} and puts the real one back.
+     */
+    public static void uninstall(Context context, String name) {
+        delete(context, DatabaseManager.getInstance(), name);
+        DatabaseManager.create(context);
+    }
+
+    public static Comic comic(int num) {
+        Comic comic = new Comic();
+        comic.setNum(num);
+        comic.setTitle("Comic " + num);
+        comic.setSafe_title("Comic " + num);
+        comic.setAlt("alt " + num);
+        comic.setTranscript("");
+        comic.setImg("http://imgs.xkcd.com/comics/" + num + ".png");
+        comic.setLink("");
+        comic.setNews("");
+        comic.setDay("1");
+        comic.setMonth("1");
+        comic.setYear("2015");
+        return comic;
+    }
+}
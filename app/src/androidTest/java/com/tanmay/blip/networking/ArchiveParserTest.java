@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import com.tanmay.blip.models.Comic;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.List;
+
+public class ArchiveParserTest extends TestCase {
+
+    // Trimmed copy of xkcd.com/archive, navigation included
+    private static final String ARCHIVE =
+            "<!DOCTYPE html>\n" +
+            "<html>\n" +
+            "<head>\n" +
+            "<title>xkcd: Archive</title>\n" +
+            "</head>\n" +
+            "<body>\n" +
+            "<div id=\"topContainer\">\n" +
+            "<ul>\n" +
+            "<li><a href=\"/archive\">Archive</a></li>\n" +
+            "<li><a href=\"https://what-if.xkcd.com\">What If?</a></li>\n" +
+            "<li><a href=\"/about\" >About</a></li>\n" +
+            "</ul>\n" +
+            "</div>\n" +
+            "<div id=\"middleContainer\" class=\"box\">\n" +
+            "<h1>Comics:</h1><br/>\n" +
+            "(Hover mouse over title to view publication date)<br /><br />\n" +
+            "<a href=\"/1000/\" title=\"2012-1-6\">1000 Comics</a><br/>\n" +
+            "<a href=\"/999/\" title=\"2012-1-4\">Cheap GPS</a><br/>\n" +
+            "<a href=\"/259/\" title=\"2007-5-9\">Clich&eacute;d Exchanges</a><br/>\n" +
+            "<a href=\"/2/\" title=\"2006-1-1\">Petit Trees (sketch)</a><br/><a href=\"/1/\" title=\"2006-01-01\">Barrel - Part 1</a><br/>\n" +
+            "</div>\n" +
+            "</body>\n" +
+            "</html>\n";
+
+    public void testReadsEveryComicInPageOrder() throws Exception {
+        List<Comic> comics = ArchiveParser.parse(new StringReader(ARCHIVE));
+        assertEquals(5, comics.size());
+        int[] nums = {1000, 999, 259, 2, 1};
+        for (int i = 0; i < nums.length; i++) {
+            assertEquals(nums[i], comics.get(i).getNum());
+        }
+    }
+
+    public void testReadsTitleAndDate() throws Exception {
+        Comic comic = ArchiveParser.parse(new StringReader(ARCHIVE)).get(1);
+        assertEquals("Cheap GPS", comic.getTitle());
+        assertEquals("Cheap GPS", comic.getSafe_title());
+        assertEquals("2012", comic.getYear());
+        assertEquals("1", comic.getMonth());
+        assertEquals("4", comic.getDay());
+        assertNull(comic.getImg());
+        assertNull(comic.getTranscript());
+    }
+
+    public void testDecodesEntitiesAndPadding() throws Exception {
+        List<Comic> comics = ArchiveParser.parse(new StringReader(ARCHIVE));
+        assertEquals("Clichéd Exchanges", comics.get(2).getTitle());
+        assertEquals("1", comics.get(4).getMonth());
+        assertEquals("1", comics.get(4).getDay());
+    }
+
+    public void testPageWithoutComicsIsEmpty() throws Exception {
+        assertTrue(ArchiveParser.parse(new StringReader("<html><body>Service Unavailable</body></html>")).isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.os.SystemClock;
+
+import junit.framework.TestCase;
+
+public class CircuitBreakerTest extends TestCase {
+
+    private static final long PAUSE = 50;
+
+    public void testOpensAfterThresholdAndPausesCallers() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, PAUSE, 2);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+
+        long start = SystemClock.elapsedRealtime();
+        breaker.acquire();
+        assertTrue(SystemClock.elapsedRealtime() - start >= PAUSE / 2);
+        assertFalse(breaker.isOpen());
+    }
+
+    public void testSuccessResetsTheCount() {
+        CircuitBreaker breaker = new CircuitBreaker(3, PAUSE, 2);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+    }
+
+    public void testGivesUpAfterMaxPauses() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, PAUSE, 1);
+        breaker.onFailure();
+        breaker.acquire();
+        breaker.onFailure();
+        try {
+            breaker.acquire();
+            fail("Expected the breaker to give up");
+        } catch (CircuitBreaker.OpenException expected) {
+            // The host failed again right after the only allowed pause
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.ResponseBody;
+import com.tanmay.blip.models.Comic;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares parsing info.0.json through {@code body().string()} and a fresh reflective {@link Gson} with
+ * streaming it through {@link ComicTypeAdapter}. The corpus is a few payloads copied from xkcd.com,
+ * repeated with their numbers changed. Throughput and bytes allocated per comic are written to logcat
+ * under the "ComicParsingBenchmark" tag.
+ */
+public class ComicParsingBenchmark extends TestCase {
+
+    private static final String TAG = "ComicParsingBenchmark";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final int CORPUS_SIZE = 2000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] PAYLOADS = {
+            "{\"month\": \"1\", \"num\": %d, \"link\": \"\", \"year\": \"2006\", \"news\": \"\", \"safe_title\": \"Barrel - Part 1\", " +
+                    "\"transcript\": \"[[A boy sits in a barrel which is floating in an ocean.]]\\nBoy: I wonder where I'll float next?\\n" +
+                    "[[The barrel drifts into the distance. Nothing else can be seen.]]\\n{{Alt: Don't we all.}}\", " +
+                    "\"alt\": \"Don't we all.\", \"img\": \"https://imgs.xkcd.com/comics/barrel_cropped_(1).jpg\", " +
+                    "\"title\": \"Barrel - Part 1\", \"day\": \"1\"}",
+            "{\"month\": \"12\", \"num\": %d, \"link\": \"\", \"year\": \"2007\", \"news\": \"\", \"safe_title\": \"Python\", " +
+                    "\"transcript\": \"[[ Guy 1 is talking to Guy 2, who is floating in the sky ]]\\nGuy 1: You're flying! How?\\n" +
+                    "Guy 2: Python!\\nGuy 2: I learned it last night! Everything is so simple!\\n" +
+                    "Guy 2: Hello world is just 'print \\\"Hello, World!\\\" '\\nGuy 1: I dunno... Dynamic typing? Whitespace?\\n" +
+                    "Guy 2: Come join us! Programming is fun again! It's a whole new world up here!\\nGuy 1: But how are you flying?\\n" +
+                    "Guy 2: I just typed 'import antigravity'\\nGuy 1: That's it?\\n" +
+                    "Guy 2: ...I also sampled everything in the medicine cabinet for comparison.\\nGuy 2: But i think this is the python.\\n" +
+                    "{{ I wrote 20 short programs in Python yesterday.  It was wonderful.  Perl, I'm leaving you. }}\", " +
+                    "\"alt\": \"I wrote 20 short programs in Python yesterday.  It was wonderful.  Perl, I'm leaving you.\", " +
+                    "\"img\": \"https://imgs.xkcd.com/comics/python.png\", \"title\": \"Python\", \"day\": \"5\"}",
+            "{\"month\": \"7\", \"num\": %d, \"link\": \"\", \"year\": \"2019\", \"news\": \"\", \"safe_title\": \"Flag Interpretation\", " +
+                    "\"transcript\": \"\", \"alt\": \"Like the Coast Guard flag, but it's always flying upside down.\", " +
+                    "\"img\": \"https://imgs.xkcd.com/comics/flag_interpretation.png\", \"title\": \"Flag Interpretation\", " +
+                    "\"day\": \"17\", \"extra_parts\": {\"headerextra\": \"\", \"pre\": \"\", \"post\": \"\", \"links\": \"\"}}"
+    };
+
+    private List<byte[]> corpus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Charset utf8 = Charset.forName("UTF-8");
+        corpus = new ArrayList<>(CORPUS_SIZE);
+        for (int num = 1; num <= CORPUS_SIZE; num++) {
+            corpus.add(String.format(PAYLOADS[num % PAYLOADS.length], num).getBytes(utf8));
+        }
+    }
+
+    public void testBothPathsAgree() throws Exception {
+        Gson gson = new Gson();
+        for (int i = 0; i < PAYLOADS.length; i++) {
+            byte[] payload = corpus.get(i);
+            Comic expected = gson.fromJson(ResponseBody.create(JSON, payload).string(), Comic.class);
+            Comic actual = ComicTypeAdapter.INSTANCE.fromBody(ResponseBody.create(JSON, payload));
+            assertEquals(expected.getNum(), actual.getNum());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getSafe_title(), actual.getSafe_title());
+            assertEquals(expected.getTranscript(), actual.getTranscript());
+            assertEquals(expected.getAlt(), actual.getAlt());
+            assertEquals(expected.getImg(), actual.getImg());
+            assertEquals(expected.getDay(), actual.getDay());
+            assertEquals(expected.getMonth(), actual.getMonth());
+            assertEquals(expected.getYear(), actual.getYear());
+        }
+    }
+
+    public void testMalformedBodyIsASyntaxError() throws Exception {
+        try {
+            ComicTypeAdapter.INSTANCE.fromBody(ResponseBody.create(JSON, "{\"num\": [}"));
+            fail("Expected a JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+            // Not an IOException, so the downloader does not treat it as a network failure
+        }
+    }
+
+    public void testEmptyBodyIsASyntaxError() throws Exception {
+        try {
+            ComicTypeAdapter.INSTANCE.fromBody(ResponseBody.create(JSON, ""));
+            fail("Expected a JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+        }
+    }
+
+    public void testComicWithoutNumIsRejected() throws Exception {
+        try {
+            ComicTypeAdapter.INSTANCE.fromBody(ResponseBody.create(JSON, "{\"title\": \"Python\"}"));
+            fail("Expected a JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+        }
+    }
+
+    public void testComicOtherThanRequestedIsRejected() throws Exception {
+        byte[] payload = corpus.get(0);
+        assertEquals(1, ComicTypeAdapter.INSTANCE.fromBytes(payload, 1).getNum());
+        try {
+            ComicTypeAdapter.INSTANCE.fromBytes(payload, 2);
+            fail("Expected a JsonSyntaxException");
+        } catch (JsonSyntaxException expected) {
+        }
+    }
+
+    public void testParsingThroughput() throws Exception {
+        long[] gson = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] streaming = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < ROUNDS; round++) {
+            keepBest(gson, timeGson());
+            keepBest(streaming, timeStreaming());
+        }
+        Log.i(TAG, "body().string() + Gson: " + report(gson));
+        Log.i(TAG, "ComicTypeAdapter stream: " + report(streaming));
+    }
+
+    private long[] timeGson() throws Exception {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        long start = System.nanoTime();
+        Gson gson = new Gson();
+        int parsed = 0;
+        for (byte[] payload : corpus) {
+            if (gson.fromJson(ResponseBody.create(JSON, payload).string(), Comic.class) != null) {
+                parsed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        assertEquals(CORPUS_SIZE, parsed);
+        return new long[]{elapsed, allocated};
+    }
+
+    private long[] timeStreaming() throws Exception {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        long start = System.nanoTime();
+        int parsed = 0;
+        for (byte[] payload : corpus) {
+            if (ComicTypeAdapter.INSTANCE.fromBody(ResponseBody.create(JSON, payload)) != null) {
+                parsed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        assertEquals(CORPUS_SIZE, parsed);
+        return new long[]{elapsed, allocated};
+    }
+
+    private static void keepBest(long[] best, long[] sample) {
+        best[0] = Math.min(best[0], sample[0]);
+        best[1] = Math.min(best[1], sample[1]);
+    }
+
+    private static String report(long[] result) {
+        return String.format("%.1f ms, %.0f comics/s, %d bytes allocated per comic",
+                result[0] / 1e6, CORPUS_SIZE / (result[0] / 1e9), result[1] / CORPUS_SIZE);
+    }
+}
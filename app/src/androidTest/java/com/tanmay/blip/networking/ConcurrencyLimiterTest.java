@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest extends TestCase {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private int lastLimit;
+    private ConcurrencyLimiter limiter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        lastLimit = -1;
+        limiter = new ConcurrencyLimiter(4, 1, 16, new ConcurrencyLimiter.Listener() {
+            @Override
+            public void onLimitChanged(int limit) {
+                lastLimit = limit;
+            }
+        });
+    }
+
+    public void testGrowsWhileLatencyIsFlat() {
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            now += RTT;
+            limiter.onSuccess(RTT, now);
+        }
+        assertTrue(limiter.getLimit() > 4);
+        assertEquals(limiter.getLimit(), lastLimit);
+    }
+
+    public void testNeverExceedsMax() {
+        long now = 0;
+        for (int i = 0; i < 10000; i++) {
+            now += RTT;
+            limiter.onSuccess(RTT, now);
+        }
+        assertEquals(16, limiter.getLimit());
+    }
+
+    public void testHoldsWhenLatencyRises() {
+        limiter.onSuccess(RTT, RTT);
+        int before = limiter.getLimit();
+        for (int i = 0; i < 50; i++) {
+            limiter.onSuccess(RTT * 10, RTT * (i + 2));
+        }
+        assertEquals(before, limiter.getLimit());
+    }
+
+    public void testHalvesOncePerRoundTrip() {
+        limiter.onSuccess(RTT, RTT);
+        limiter.onDropped(RTT, 2 * RTT);
+        assertEquals(2, limiter.getLimit());
+        // Failures from the same round are one signal
+        limiter.onDropped(RTT, 2 * RTT + 1);
+        assertEquals(2, limiter.getLimit());
+        limiter.onDropped(RTT, 4 * RTT);
+        assertEquals(1, limiter.getLimit());
+        limiter.onDropped(RTT, 6 * RTT);
+        assertEquals(1, limiter.getLimit());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import com.tanmay.blip.models.Comic;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadPipelineTest extends TestCase {
+
+    private static final int COMICS = 500;
+    private static final int BATCH = 20;
+    private static final int BODY_CAPACITY = 16;
+    private static final int CONCURRENCY = 4;
+
+    private DownloadScheduler scheduler;
+    private final Set<Integer> rejected = Collections.synchronizedSet(new HashSet<Integer>());
+    private final DownloadPipeline.Rejecter rejecter = new DownloadPipeline.Rejecter() {
+        @Override
+        public void reject(int num, Exception e) {
+            rejected.add(num);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new DownloadScheduler(CONCURRENCY, CONCURRENCY, CONCURRENCY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        super.tearDown();
+    }
+
+    public void testEveryComicIsWrittenInBoundedBatches() throws Exception {
+        final List<List<Comic>> batches = Collections.synchronizedList(new ArrayList<List<Comic>>());
+        DownloadPipeline pipeline = new DownloadPipeline(scheduler, DownloadScheduler.LANE_BACKFILL, new JsonFetcher(), new DownloadPipeline.Writer() {
+            @Override
+            public void write(List<Comic> comics) {
+                batches.add(comics);
+            }
+        }, rejecter, 2, BODY_CAPACITY, BATCH);
+
+        assertTrue(pipeline.run(range(1, COMICS)));
+
+        Set<Integer> written = new HashSet<>();
+        for (List<Comic> batch : batches) {
+            assertTrue(batch.size() <= BATCH);
+            for (Comic comic : batch) {
+                assertTrue(written.add(comic.getNum()));
+                assertEquals("Comic " + comic.getNum(), comic.getTitle());
+            }
+        }
+        assertEquals(COMICS, written.size());
+    }
+
+    public void testFetchFailureIsReported() throws Exception {
+        final AtomicInteger written = new AtomicInteger();
+        DownloadPipeline pipeline = new DownloadPipeline(scheduler, DownloadScheduler.LANE_BACKFILL, new JsonFetcher() {
+            @Override
+            public byte[] fetch(int num) throws IOException {
+                if (num == 7) {
+                    throw new IOException("Connection reset");
+                }
+                return super.fetch(num);
+            }
+        }, new DownloadPipeline.Writer() {
+            @Override
+            public void write(List<Comic> comics) {
+                written.addAndGet(comics.size());
+            }
+        }, rejecter, 2, BODY_CAPACITY, BATCH);
+
+        assertFalse(pipeline.run(range(1, 50)));
+        assertEquals(49, written.get());
+    }
+
+    public void testMalformedBodyIsRejected() throws Exception {
+        final AtomicInteger written = new AtomicInteger();
+        DownloadPipeline pipeline = new DownloadPipeline(scheduler, DownloadScheduler.LANE_BACKFILL, new JsonFetcher() {
+            @Override
+            public byte[] fetch(int num) throws IOException {
+                if (num == 7) {
+                    return "{\"num\": [}".getBytes("UTF-8");
+                }
+                return super.fetch(num);
+            }
+        }, new DownloadPipeline.Writer() {
+            @Override
+            public void write(List<Comic> comics) {
+                written.addAndGet(comics.size());
+            }
+        }, rejecter, 2, BODY_CAPACITY, BATCH);
+
+        // A body that arrived is not a fetch failure, whatever is in it
+        assertTrue(pipeline.run(range(1, 50)));
+        assertEquals(49, written.get());
+        assertEquals(Collections.singleton(7), rejected);
+    }
+
+    public void testSlowWriterHoldsBackFetchers() throws Exception {
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger stored = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+        DownloadPipeline pipeline = new DownloadPipeline(scheduler, DownloadScheduler.LANE_BACKFILL, new JsonFetcher() {
+            @Override
+            public byte[] fetch(int num) throws IOException {
+                int outstanding = fetched.incrementAndGet() - stored.get();
+                while (true) {
+                    int max = maxOutstanding.get();
+                    if (outstanding <= max || maxOutstanding.compareAndSet(max, outstanding)) {
+                        break;
+                    }
+                }
+                return super.fetch(num);
+            }
+        }, new DownloadPipeline.Writer() {
+            @Override
+            public void write(List<Comic> comics) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                stored.addAndGet(comics.size());
+            }
+        }, rejecter, 2, BODY_CAPACITY, BATCH);
+
+        assertTrue(pipeline.run(range(1, COMICS)));
+        assertEquals(COMICS, stored.get());
+        // Every queue, the batch being written, one comic per parser and one body per fetcher
+        int bound = BODY_CAPACITY + 2 * BATCH + BATCH + 2 + CONCURRENCY;
+        assertTrue("Outstanding comics peaked at " + maxOutstanding.get(), maxOutstanding.get() <= bound);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> nums = new ArrayList<>();
+        for (int num = from; num <= to; num++) {
+            nums.add(num);
+        }
+        return nums;
+    }
+
+    private static class JsonFetcher implements DownloadPipeline.Fetcher {
+
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        @Override
+        public byte[] fetch(int num) throws IOException {
+            return ("{\"num\": " + num + ", \"title\": \"Comic " + num + "\", \"safe_title\": \"Comic " + num + "\"," +
+                    " \"alt\": \"\", \"img\": \"\", \"transcript\": \"\", \"day\": \"1\", \"month\": \"1\", \"year\": \"2006\"}")
+                    .getBytes(UTF_8);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DownloadSchedulerTest extends TestCase {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicBoolean interrupted = new AtomicBoolean();
+    private DownloadScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new DownloadScheduler(1, 1, 1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        release.countDown();
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        super.tearDown();
+    }
+
+    public void testWaitingWorkRunsByLaneThenSubmissionOrder() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(DownloadScheduler.LANE_BACKFILL, blocker()));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        futures.add(scheduler.submit(DownloadScheduler.LANE_BACKFILL, record(order, "backfill 1")));
+        futures.add(scheduler.submit(DownloadScheduler.LANE_TODAY, record(order, "today 1")));
+        futures.add(scheduler.submit(DownloadScheduler.LANE_USER, record(order, "user 1")));
+        futures.add(scheduler.submit(DownloadScheduler.LANE_BACKFILL, record(order, "backfill 2")));
+        futures.add(scheduler.submit(DownloadScheduler.LANE_USER, record(order, "user 2")));
+        release.countDown();
+        DownloadScheduler.awaitAll(futures);
+
+        assertEquals(Arrays.asList("user 1", "user 2", "today 1", "backfill 1", "backfill 2"), order);
+    }
+
+    public void testUnknownLaneIsRejected() {
+        try {
+            scheduler.submit(DownloadScheduler.LANE_BACKFILL + 1, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Lanes are fixed, so a mistyped one fails where it is submitted
+        }
+    }
+
+    public void testShutdownInterruptsRunningAndDropsWaiting() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.submit(DownloadScheduler.LANE_USER, blocker());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<?> waiting = scheduler.submit(DownloadScheduler.LANE_USER, record(order, "waiting"));
+
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        assertFalse(waiting.isDone());
+        assertTrue(order.isEmpty());
+
+        try {
+            scheduler.submit(DownloadScheduler.LANE_USER, record(order, "late"));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            // A scheduler that was shut down stays shut down
+        }
+    }
+
+    /**
+     * Holds the scheduler's only thread until {@link #release} opens or it is interrupted.
+     */
+    private Runnable blocker() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        };
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
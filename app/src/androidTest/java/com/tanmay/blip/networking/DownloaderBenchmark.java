@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.content.LocalBroadcastManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.ScratchDatabase;
+import com.tanmay.blip.database.SharedPrefs;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link XKCDDownloader} end to end against a {@link MockXkcdServer} and a scratch database, with
+ * enough latency and bandwidth limits to look like a phone on a decent connection. Comics per second,
+ * peak heap and time spent writing to the database are written to logcat under the
+ * "DownloaderBenchmark" tag for each action.
+ */
+public class DownloaderBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "DownloaderBenchmark";
+    private static final String TEST_DB = "XKCD_benchmark";
+    private static final int COMICS = 1500;
+    private static final long LATENCY_MILLIS = 80;
+    private static final long BYTES_PER_SECOND = 64 * 1024;
+    private static final double ERROR_RATE = 0.01;
+    private static final long TIMEOUT_MINUTES = 10;
+    private static final long HEAP_SAMPLE_MILLIS = 50;
+    private static final int SPECIFIC_FETCHES = 200;
+    private static final double SLOW_RATE = 0.05;
+    private static final long SLOW_MILLIS = 2000;
+
+    private MockXkcdServer server;
+    private int savedCheckpoint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScratchDatabase.install(getContext(), TEST_DB);
+        savedCheckpoint = SharedPrefs.getInstance().getArchiveCheckpoint();
+        SharedPrefs.getInstance().setArchiveCheckpoint(0);
+
+        server = new MockXkcdServer(COMICS);
+        server.setLatency(LATENCY_MILLIS);
+        server.setBytesPerSecond(BYTES_PER_SECOND);
+        server.setErrorRate(ERROR_RATE);
+        server.start();
+        XKCDDownloader.setHost(server.host());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        XKCDDownloader.setHost(XKCDDownloader.XKCD_HOST);
+        ScratchDatabase.uninstall(getContext(), TEST_DB);
+        SharedPrefs.getInstance().setArchiveCheckpoint(savedCheckpoint);
+        server.shutdown();
+        super.tearDown();
+    }
+
+    public void testDownloadAll() throws Exception {
+        run(XKCDDownloader.DOWNLOAD_ALL);
+        assertEquals(COMICS - 1, DatabaseManager.getInstance().getCount());
+    }
+
+    /**
+     * Seeds the catalogue from the archive page and logs how long until the feed could be shown, then how
+     * long the details take to fill in behind it.
+     */
+    public void testBootstrapFromIndex() throws Exception {
+        final CountDownLatch seeded = new CountDownLatch(1);
+        final CountDownLatch filled = new CountDownLatch(2);
+        final AtomicBoolean failed = new AtomicBoolean();
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (XKCDDownloader.DOWNLOAD_FAIL.equals(intent.getAction())) {
+                    failed.set(true);
+                }
+                seeded.countDown();
+                filled.countDown();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(XKCDDownloader.DOWNLOAD_SUCCESS);
+        filter.addAction(XKCDDownloader.DOWNLOAD_FAIL);
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(getContext());
+        manager.registerReceiver(receiver, filter);
+        try {
+            Intent intent = new Intent(getContext(), XKCDDownloader.class);
+            intent.setAction(XKCDDownloader.DOWNLOAD_INDEX);
+            long start = System.nanoTime();
+            getContext().startService(intent);
+
+            assertTrue(seeded.await(TIMEOUT_MINUTES, TimeUnit.MINUTES));
+            long seededNanos = System.nanoTime() - start;
+            assertFalse(failed.get());
+            assertEquals(COMICS - 1, DatabaseManager.getInstance().getCount());
+            int skeletons = DatabaseManager.getInstance().getSkeletonCount();
+
+            assertTrue(filled.await(TIMEOUT_MINUTES, TimeUnit.MINUTES));
+            long filledNanos = System.nanoTime() - start;
+            assertFalse(failed.get());
+            assertEquals(0, DatabaseManager.getInstance().getSkeletonCount());
+
+            Log.i(TAG, String.format("%s: %d comics listed after %.0f ms (%d still skeletons), all details after %.1f s",
+                    XKCDDownloader.DOWNLOAD_INDEX, COMICS - 1, seededNanos / 1e6, skeletons, filledNanos / 1e9));
+        } finally {
+            manager.unregisterReceiver(receiver);
+        }
+    }
+
+    public void testRecheckRecent() throws Exception {
+        seed();
+        run(XKCDDownloader.DOWNLOAD_LAST_TEN);
+    }
+
+    public void testMissingTranscripts() throws Exception {
+        seed();
+        run(XKCDDownloader.DOWNLOAD_TRANSCRIPT);
+    }
+
+    /**
+     * Fetches single comics from a server where one response in twenty stalls, first without hedging and
+     * then with it, and compares the latency percentiles the user would see.
+     */
+    public void testSpecificTailLatency() throws Exception {
+        server.setErrorRate(0);
+        server.setSlowResponses(SLOW_RATE, SLOW_MILLIS);
+        Hedger hedger = DownloadScheduler.getInstance().getHedger();
+        try {
+            hedger.setEnabled(false);
+            long[] plain = fetchSpecific(1);
+            hedger.setEnabled(true);
+            long hedgedBefore = hedger.getHedgedCount();
+            long wonBefore = hedger.getWonCount();
+            long[] hedged = fetchSpecific(SPECIFIC_FETCHES + 1);
+
+            Log.i(TAG, "Single comics without hedging: " + percentiles(plain));
+            Log.i(TAG, "Single comics with hedging: " + percentiles(hedged) + String.format(", %d of %d hedged, %d won by the copy",
+                    hedger.getHedgedCount() - hedgedBefore, SPECIFIC_FETCHES, hedger.getWonCount() - wonBefore));
+        } finally {
+            hedger.setEnabled(true);
+        }
+    }
+
+    /**
+     * Downloads {@link #SPECIFIC_FETCHES} comics one at a time, starting at {@code first}, each one new to
+     * the database so none is answered with 304.
+     *
+     * @return how long each one took, sorted
+     */
+    private long[] fetchSpecific(int first) throws Exception {
+        long[] latencies = new long[SPECIFIC_FETCHES];
+        for (int i = 0; i < SPECIFIC_FETCHES; i++) {
+            Intent intent = new Intent(getContext(), XKCDDownloader.class);
+            intent.setAction(XKCDDownloader.DOWNLOAD_SPECIFIC);
+            intent.putExtra(XKCDDownloader.COMIC_NUM, first + i);
+            long start = System.nanoTime();
+            assertTrue(Downloads.await(getContext(), intent, TIMEOUT_MINUTES));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static String percentiles(long[] sorted) {
+        return String.format("p50 %.0f ms, p90 %.0f ms, p99 %.0f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 9 / 10] / 1e6, sorted[sorted.length * 99 / 100] / 1e6);
+    }
+
+    private void seed() throws Exception {
+        assertTrue(Downloads.await(getContext(), XKCDDownloader.DOWNLOAD_ALL, TIMEOUT_MINUTES));
+    }
+
+    /**
+     * Runs one action and logs its figures. Every comic the server sent or confirmed unchanged counts
+     * towards comics per second.
+     */
+    private void run(String action) throws Exception {
+        final AtomicLong peakHeap = new AtomicLong();
+        final AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Runtime runtime = Runtime.getRuntime();
+                while (sampling.get()) {
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    if (used > peakHeap.get()) {
+                        peakHeap.set(used);
+                    }
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "Heap sampler");
+
+        System.gc();
+        int requestsBefore = server.getRequestCount();
+        int servedBefore = server.getServedCount();
+        int notModifiedBefore = server.getNotModifiedCount();
+        int errorsBefore = server.getErrorCount();
+        long upsertBefore = DatabaseManager.getInstance().getUpsertNanos();
+        sampler.start();
+        long start = System.nanoTime();
+        boolean succeeded;
+        try {
+            succeeded = Downloads.await(getContext(), action, TIMEOUT_MINUTES);
+        } finally {
+            sampling.set(false);
+            sampler.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long upsert = DatabaseManager.getInstance().getUpsertNanos() - upsertBefore;
+        int comics = server.getServedCount() - servedBefore;
+
+        Log.i(TAG, String.format("%s: %.1f s, %.0f comics/s, %d requests (%d not modified, %d failed), " +
+                        "peak heap %d KB, %.0f ms writing to the database",
+                action, elapsed / 1e9, comics / (elapsed / 1e9), server.getRequestCount() - requestsBefore,
+                server.getNotModifiedCount() - notModifiedBefore, server.getErrorCount() - errorsBefore, peakHeap.get() / 1024, upsert / 1e6));
+        assertTrue(action + " reported a failure", succeeded);
+    }
+}
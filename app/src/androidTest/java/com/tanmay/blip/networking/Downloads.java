@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.networking;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.content.LocalBroadcastManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts {@link XKCDDownloader} from tests and waits for it to report how it went.
+ */
+final class Downloads {
+
+    private Downloads() {
+    }
+
+    static boolean await(Context context, String action, long timeoutMinutes) throws InterruptedException {
+        Intent intent = new Intent(context, XKCDDownloader.class);
+        intent.setAction(action);
+        return await(context, intent, timeoutMinutes);
+    }
+
+    /**
+     * @return whether the downloader broadcast DOWNLOAD_SUCCESS
+     */
+    static boolean await(Context context, Intent intent, long timeoutMinutes) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean succeeded = new AtomicBoolean();
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                succeeded.set(XKCDDownloader.DOWNLOAD_SUCCESS.equals(intent.getAction()));
+                done.countDown();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(XKCDDownloader.DOWNLOAD_SUCCESS);
+        filter.addAction(XKCDDownloader.DOWNLOAD_FAIL);
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
+        manager.registerReceiver(receiver, filter);
+        try {
+            context.startService(intent);
+            if (!done.await(timeoutMinutes, TimeUnit.MINUTES)) {
+                throw new AssertionError(intent.getAction() + " did not finish in time");
+            }
+            return succeeded.get();
+        } finally {
+            manager.unregisterReceiver(receiver);
+        }
+    }
+}
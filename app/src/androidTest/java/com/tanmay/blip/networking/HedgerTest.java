@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgerTest extends TestCase {
+
+    private static final long USUAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int WINDOW = 10;
+
+    private ExecutorService executor;
+    private Hedger hedger;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newCachedThreadPool();
+        hedger = new Hedger(executor, WINDOW, WINDOW, 0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < WINDOW; i++) {
+            hedger.recordLatency(USUAL_NANOS);
+        }
+    }
+
+    public void testNothingIsHedgedBeforeEnoughSamples() throws Exception {
+        assertEquals(-1, hedger.hedgeDelayNanos());
+        assertEquals("comic", hedger.run(new SlowFirstCall(100, false, 0)));
+        assertEquals(0, hedger.getHedgedCount());
+    }
+
+    public void testDelayIsTheNinetiethPercentile() {
+        for (int i = 1; i <= WINDOW; i++) {
+            hedger.recordLatency(i);
+        }
+        assertEquals(9, hedger.hedgeDelayNanos());
+    }
+
+    public void testSlowCallIsHedgedAndTheCopyWins() throws Exception {
+        warmUp();
+        SlowFirstCall call = new SlowFirstCall(1000, false, 0);
+        long start = System.nanoTime();
+        assertEquals("copy", hedger.run(call));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, hedger.getHedgedCount());
+        assertEquals(1, hedger.getWonCount());
+
+        // The slow copy still finishes, and its result is released
+        assertTrue(call.discarded.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testFastCallIsNotHedged() throws Exception {
+        warmUp();
+        assertEquals("comic", hedger.run(new SlowFirstCall(0, false, 0)));
+        assertEquals(0, hedger.getHedgedCount());
+        assertEquals(1, hedger.getCallCount());
+    }
+
+    public void testFailureWaitsForTheOtherCopy() throws Exception {
+        warmUp();
+        // The first attempt fails after the copy was sent but before it answers
+        assertEquals("copy", hedger.run(new SlowFirstCall(50, true, 100)));
+        assertEquals(1, hedger.getWonCount());
+    }
+
+    public void testDisabledHedgerRunsOnce() throws Exception {
+        warmUp();
+        hedger.setEnabled(false);
+        SlowFirstCall call = new SlowFirstCall(200, false, 0);
+        assertEquals("comic", hedger.run(call));
+        assertEquals(1, call.attempts.get());
+        assertEquals(0, hedger.getHedgedCount());
+    }
+
+    /**
+     * The first attempt takes {@code firstMillis} and then answers or fails; any later one answers after
+     * {@code copyMillis}.
+     */
+    private static class SlowFirstCall implements Hedger.Call<String> {
+
+        private final long firstMillis;
+        private final boolean firstFails;
+        private final long copyMillis;
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch discarded = new CountDownLatch(1);
+
+        SlowFirstCall(long firstMillis, boolean firstFails, long copyMillis) {
+            this.firstMillis = firstMillis;
+            this.firstFails = firstFails;
+            this.copyMillis = copyMillis;
+        }
+
+        @Override
+        public String call() throws IOException {
+            boolean first = attempts.getAndIncrement() == 0;
+            try {
+                Thread.sleep(first ? firstMillis : copyMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (!first) {
+                return "copy";
+            }
+            if (firstFails) {
+                throw new IOException("Connection reset");
+            }
+            return "comic";
+        }
+
+        @Override
+        public void discard(String result) {
+            discarded.countDown();
+        }
+    }
+}
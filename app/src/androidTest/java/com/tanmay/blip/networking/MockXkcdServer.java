@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for xkcd.com serving a synthetic archive of comics 1 to N in the same info.0.json
+ * format, with configurable latency, bandwidth and error rate. Every comic carries an ETag and honours
+ * If-None-Match, and comic 404 does not exist, like on the real site. Comic N is dated today and the
+ * ones before it every other day, so the most recent week holds a handful of them. The archive page
+ * lists them all in the same markup as xkcd.com/archive.
+ */
+class MockXkcdServer {
+
+    private static final Pattern COMIC_PATH = Pattern.compile("^/(\\d+)/info\\.0\\.json$");
+    private static final String LATEST_PATH = "/info.0.json";
+    private static final String ARCHIVE_PATH = "/archive/";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(404);
+    private final int comics;
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile double errorRate;
+    private volatile double slowRate;
+    private volatile long slowMillis;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final Queue<Integer> requestedComics = new ConcurrentLinkedQueue<>();
+
+    MockXkcdServer(int comics) {
+        this.comics = comics;
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return respond(request);
+            }
+        });
+    }
+
+    void start() throws IOException {
+        server.start();
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Base URL to hand to {@link XKCDDownloader#setHost(String)}.
+     */
+    String host() {
+        return "http://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    /**
+     * Time before each response starts.
+     */
+    void setLatency(long millis) {
+        latencyMillis = millis;
+    }
+
+    /**
+     * Rate at which response bodies are sent, or 0 for no limit.
+     */
+    void setBytesPerSecond(long bytes) {
+        bytesPerSecond = bytes;
+    }
+
+    /**
+     * Fraction of requests answered with 503.
+     */
+    void setErrorRate(double rate) {
+        errorRate = rate;
+    }
+
+    /**
+     * Makes a fraction of responses start this much later than the rest, like a bad connection to one
+     * of several servers behind the same name.
+     */
+    void setSlowResponses(double rate, long millis) {
+        slowRate = rate;
+        slowMillis = millis;
+    }
+
+    int getComicCount() {
+        return comics;
+    }
+
+    int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Requests answered with a comic or with 304.
+     */
+    int getServedCount() {
+        return served.get();
+    }
+
+    int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    int getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Numbers requested through their own comic endpoint, sorted, with one entry per request.
+     */
+    List<Integer> getRequestedComics() {
+        List<Integer> nums = new ArrayList<>(requestedComics);
+        Collections.sort(nums);
+        return nums;
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        requests.incrementAndGet();
+        boolean slow;
+        boolean error;
+        synchronized (random) {
+            slow = random.nextDouble() < slowRate;
+            error = random.nextDouble() < errorRate;
+        }
+        long delay = latencyMillis + (slow ? slowMillis : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        if (error) {
+            errors.incrementAndGet();
+            return new MockResponse().setResponseCode(503);
+        }
+
+        if (ARCHIVE_PATH.equals(request.getPath())) {
+            served.incrementAndGet();
+            return throttle(new MockResponse().addHeader("Content-Type", "text/html; charset=utf-8").setBody(archive()));
+        }
+
+        int num;
+        Matcher matcher = COMIC_PATH.matcher(request.getPath());
+        if (LATEST_PATH.equals(request.getPath())) {
+            num = comics;
+        } else if (matcher.matches()) {
+            num = Integer.parseInt(matcher.group(1));
+            requestedComics.add(num);
+        } else {
+            return new MockResponse().setResponseCode(404);
+        }
+        if (num < 1 || num > comics || num == 404) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        served.incrementAndGet();
+        String eTag = "\"" + num + "\"";
+        if (eTag.equals(request.getHeader("If-None-Match"))) {
+            notModified.incrementAndGet();
+            return new MockResponse().setResponseCode(304).addHeader("ETag", eTag);
+        }
+        return throttle(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("ETag", eTag)
+                .setBody(json(num)));
+    }
+
+    private MockResponse throttle(MockResponse response) {
+        if (bytesPerSecond > 0) {
+            response.throttleBody(bytesPerSecond, 1, TimeUnit.SECONDS);
+        }
+        return response;
+    }
+
+    private Calendar dateOf(int num) {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.DAY_OF_YEAR, -2 * (comics - num));
+        return date;
+    }
+
+    /**
+     * The archive page, newest comic first.
+     */
+    String archive() {
+        StringBuilder page = new StringBuilder("<html><body>\n<div id=\"middleContainer\" class=\"box\">\n<h1>Comics:</h1><br/>\n");
+        for (int num = comics; num >= 1; num--) {
+            if (num == 404) {
+                continue;
+            }
+            Calendar date = dateOf(num);
+            page.append("<a href=\"/").append(num).append("/\" title=\"").append(date.get(Calendar.YEAR)).append('-')
+                    .append(date.get(Calendar.MONTH) + 1).append('-').append(date.get(Calendar.DAY_OF_MONTH))
+                    .append("\">Comic ").append(num).append("</a><br/>\n");
+        }
+        return page.append("</div>\n</body></html>\n").toString();
+    }
+
+    /**
+     * The payload of comic {@code num}. Every third comic has no transcript yet.
+     */
+    String json(int num) {
+        Calendar date = dateOf(num);
+        StringBuilder transcript = new StringBuilder();
+        if (num % 3 != 0) {
+            while (transcript.length() < 600) {
+                transcript.append("[[A stick figure stands at a whiteboard.]]\\nCueball: Comic ").append(num).append(".\\n");
+            }
+        }
+        return "{\"month\": \"" + (date.get(Calendar.MONTH) + 1) + "\", \"num\": " + num + ", \"link\": \"\", \"year\": \"" + date.get(Calendar.YEAR) +
+                "\", \"news\": \"\", \"safe_title\": \"Comic " + num + "\", \"transcript\": \"" + transcript +
+                "\", \"alt\": \"Alt text of comic " + num + ", usually a sentence or two long.\"," +
+                " \"img\": \"http://imgs.xkcd.com/comics/comic_" + num + ".png\", \"title\": \"Comic " + num +
+                "\", \"day\": \"" + date.get(Calendar.DAY_OF_MONTH) + "\"}";
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class RetryPolicyTest extends TestCase {
+
+    public void testDelaysStayUnderTheExponentialCap() {
+        RetryPolicy policy = new RetryPolicy(6, 100, 1000, new Random(42));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.delayBeforeRetry(1) < 100);
+            assertTrue(policy.delayBeforeRetry(2) < 200);
+            assertTrue(policy.delayBeforeRetry(3) < 400);
+            assertTrue(policy.delayBeforeRetry(5) < 1000);
+            assertTrue(policy.delayBeforeRetry(40) < 1000);
+            assertTrue(policy.delayBeforeRetry(1) >= 0);
+        }
+    }
+
+    public void testDelaysAreSpreadOut() {
+        RetryPolicy policy = new RetryPolicy(6, 100, 1000, new Random(42));
+        long first = policy.delayBeforeRetry(4);
+        boolean differs = false;
+        for (int i = 0; i < 20 && !differs; i++) {
+            differs = policy.delayBeforeRetry(4) != first;
+        }
+        assertTrue(differs);
+    }
+
+    public void testOnlyServerTroubleIsRetried() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(500));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertFalse(RetryPolicy.isRetryable(200));
+        assertFalse(RetryPolicy.isRetryable(304));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest extends TestCase {
+
+    private static final int CALLERS = 8;
+
+    public void testConcurrentCallersShareOneCall() throws Exception {
+        final SingleFlight<Integer, String> flight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(CALLERS);
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+
+        for (int i = 0; i < CALLERS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(flight.run(42, new SingleFlight.Call<String>() {
+                            @Override
+                            public String call() throws IOException {
+                                calls.incrementAndGet();
+                                try {
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    throw new IOException(e);
+                                }
+                                return "comic 42";
+                            }
+                        }));
+                    } catch (IOException e) {
+                        results.add(e.toString());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        // Let every caller reach the flight before the one running call finishes
+        while (flight.getStartedCount() + flight.getJoinedCount() < CALLERS) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, calls.get());
+        assertEquals(CALLERS - 1, flight.getJoinedCount());
+        assertEquals(Collections.nCopies(CALLERS, "comic 42"), results);
+    }
+
+    public void testFinishedCallIsNotReused() throws Exception {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        SingleFlight.Call<Integer> call = new SingleFlight.Call<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(1, (int) flight.run(1, call));
+        assertEquals(2, (int) flight.run(1, call));
+        assertEquals(3, (int) flight.run(2, call));
+    }
+
+    public void testFailureIsRethrown() {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<>();
+        try {
+            flight.run(1, new SingleFlight.Call<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    throw new IOException("404");
+                }
+            });
+            fail("Expected the IOException to be rethrown");
+        } catch (IOException expected) {
+            assertEquals("404", expected.getMessage());
+        }
+    }
+}
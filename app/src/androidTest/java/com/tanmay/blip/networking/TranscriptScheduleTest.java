@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class TranscriptScheduleTest extends TestCase {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final TranscriptSchedule schedule = new TranscriptSchedule(DAY, 7 * DAY, 30 * DAY, 180 * DAY);
+
+    public void testOlderComicsAreCheckedLessOften() {
+        assertEquals(DAY, schedule.delayAfter(3 * DAY, 1));
+        assertEquals(7 * DAY, schedule.delayAfter(100 * DAY, 1));
+        assertEquals(30 * DAY, schedule.delayAfter(3000 * DAY, 1));
+    }
+
+    public void testSpacingDoublesWithEveryEmptyCheck() {
+        assertEquals(7 * DAY, schedule.delayAfter(100 * DAY, 1));
+        assertEquals(14 * DAY, schedule.delayAfter(100 * DAY, 2));
+        assertEquals(28 * DAY, schedule.delayAfter(100 * DAY, 3));
+    }
+
+    public void testSpacingIsCapped() {
+        assertEquals(180 * DAY, schedule.delayAfter(3000 * DAY, 4));
+        assertEquals(180 * DAY, schedule.delayAfter(3000 * DAY, 1000));
+    }
+}
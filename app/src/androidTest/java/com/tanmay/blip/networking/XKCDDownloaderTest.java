@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tanmay.blip.networking;
+
+import android.test.AndroidTestCase;
+
+import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.ScratchDatabase;
+import com.tanmay.blip.database.SharedPrefs;
+import com.tanmay.blip.models.Comic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link XKCDDownloader} against a {@link MockXkcdServer} and a scratch database.
+ */
+public class XKCDDownloaderTest extends AndroidTestCase {
+
+    private static final String TEST_DB = "XKCD_downloader_test";
+    private static final int COMICS = 100;
+    private static final int CHECKPOINT = 60;
+    private static final long TIMEOUT_MINUTES = 2;
+
+    private MockXkcdServer server;
+    private int savedCheckpoint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ScratchDatabase.install(getContext(), TEST_DB);
+        savedCheckpoint = SharedPrefs.getInstance().getArchiveCheckpoint();
+        server = new MockXkcdServer(COMICS);
+        server.start();
+        XKCDDownloader.setHost(server.host());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        XKCDDownloader.setHost(XKCDDownloader.XKCD_HOST);
+        ScratchDatabase.uninstall(getContext(), TEST_DB);
+        SharedPrefs.getInstance().setArchiveCheckpoint(savedCheckpoint);
+        server.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Leaves the database as a run cut short after {@link #CHECKPOINT} would have: everything up to the
+     * checkpoint done, one comic past it already written, the rest missing.
+     */
+    public void testInterruptedDownloadResumesFromCheckpoint() throws Exception {
+        List<Comic> stored = new ArrayList<>();
+        for (int num = 1; num <= CHECKPOINT; num++) {
+            stored.add(ScratchDatabase.comic(num));
+        }
+        stored.add(ScratchDatabase.comic(CHECKPOINT + 10));
+        DatabaseManager.getInstance().upsertComics(stored);
+        SharedPrefs.getInstance().setArchiveCheckpoint(CHECKPOINT);
+
+        assertTrue(Downloads.await(getContext(), XKCDDownloader.DOWNLOAD_ALL, TIMEOUT_MINUTES));
+
+        // The latest comic comes from its own endpoint, and nothing at or below the checkpoint is asked for
+        List<Integer> expected = new ArrayList<>();
+        for (int num = CHECKPOINT + 1; num < COMICS; num++) {
+            if (num != CHECKPOINT + 10) {
+                expected.add(num);
+            }
+        }
+        assertEquals(expected, server.getRequestedComics());
+        assertEquals(COMICS, DatabaseManager.getInstance().getCount());
+        assertEquals(COMICS, SharedPrefs.getInstance().getArchiveCheckpoint());
+    }
+
+    public void testCheckpointIsTrustedOverGapsBelowIt() throws Exception {
+        List<Comic> stored = new ArrayList<>();
+        for (int num = 1; num <= CHECKPOINT; num++) {
+            if (num != CHECKPOINT / 2) {
+                stored.add(ScratchDatabase.comic(num));
+            }
+        }
+        DatabaseManager.getInstance().upsertComics(stored);
+        SharedPrefs.getInstance().setArchiveCheckpoint(CHECKPOINT);
+
+        assertTrue(Downloads.await(getContext(), XKCDDownloader.DOWNLOAD_ALL, TIMEOUT_MINUTES));
+
+        assertFalse(server.getRequestedComics().contains(CHECKPOINT / 2));
+        assertEquals(COMICS - 1, DatabaseManager.getInstance().getCount());
+    }
+
+    public void testExpiredUnavailableComicBelowCheckpointIsFetchedAgain() throws Exception {
+        List<Comic> stored = new ArrayList<>();
+        for (int num = 1; num <= CHECKPOINT; num++) {
+            if (num != CHECKPOINT / 2 && num != CHECKPOINT / 4) {
+                stored.add(ScratchDatabase.comic(num));
+            }
+        }
+        DatabaseManager.getInstance().upsertComics(stored);
+        DatabaseManager.getInstance().markUnavailable(CHECKPOINT / 2, "malformed", -1);
+        DatabaseManager.getInstance().markUnavailable(CHECKPOINT / 4, "malformed", TimeUnit.DAYS.toMillis(1));
+        SharedPrefs.getInstance().setArchiveCheckpoint(CHECKPOINT);
+
+        assertTrue(Downloads.await(getContext(), XKCDDownloader.DOWNLOAD_ALL, TIMEOUT_MINUTES));
+
+        // Only the mark that ran out is retried, the other one still counts as done
+        assertTrue(server.getRequestedComics().contains(CHECKPOINT / 2));
+        assertFalse(server.getRequestedComics().contains(CHECKPOINT / 4));
+        assertNotNull(DatabaseManager.getInstance().getComic(CHECKPOINT / 2));
+        assertEquals(COMICS - 1, DatabaseManager.getInstance().getCount());
+    }
+
+    public void testPlainDownloadsWarmUpTheHedger() throws Exception {
+        SharedPrefs.getInstance().setArchiveCheckpoint(0);
+
+        // Backfill requests are never hedged themselves, but their latencies set the delay for the ones that are
+        assertTrue(Downloads.await(getContext(), XKCDDownloader.DOWNLOAD_ALL, TIMEOUT_MINUTES));
+
+        assertTrue(DownloadScheduler.getInstance().getHedger().hedgeDelayNanos() >= 0);
+    }
+}
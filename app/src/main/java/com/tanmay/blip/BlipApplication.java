@@ -21,7 +21,9 @@ import android.app.Application;
 import com.crashlytics.android.Crashlytics;
 import com.squareup.okhttp.Cache;
 import com.squareup.okhttp.OkHttpClient;
+import com.tanmay.blip.database.DatabaseManager;
 import com.tanmay.blip.database.SharedPrefs;
+import com.tanmay.blip.networking.DownloadScheduler;
 import com.tanmay.blip.utils.SpeechSynthesizer;
 
 import io.fabric.sdk.android.Fabric;
@@ -47,6 +49,8 @@ public class BlipApplication extends Application {
         client.setCache(cache);
 
         SharedPrefs.create(this);
+        DatabaseManager.create(this);
+        DownloadScheduler.create();
         SpeechSynthesizer.create(this);
     }
 
@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ProgressBar;
@@ -41,12 +42,24 @@ public class DownloadActivity extends AppCompatActivity implements View.OnClickL
         public void onReceive(Context context, Intent intent) {
             switch (intent.getAction()) {
                 case XKCDDownloader.DOWNLOAD_PROGRESS:
+                    Bundle extras = intent.getExtras();
                     if (progressBar.isIndeterminate()) {
                         progressBar.setIndeterminate(false);
                     }
-                    progressBar.setProgress((int) intent.getExtras().getDouble(XKCDDownloader.PROGRESS));
-                    progress.setText(String.valueOf(intent.getExtras().getDouble(XKCDDownloader.PROGRESS)) + "%");
-                    title.setText(intent.getExtras().getString(XKCDDownloader.TITLE));
+                    int count = extras.getInt(XKCDDownloader.COUNT);
+                    int total = extras.getInt(XKCDDownloader.TOTAL);
+                    long eta = extras.getLong(XKCDDownloader.ETA, -1);
+                    progressBar.setMax(total);
+                    progressBar.setProgress(count);
+                    String text = getString(R.string.download_progress, count, total);
+                    if (eta >= 0) {
+                        text += "\n" + getString(R.string.download_rate, extras.getDouble(XKCDDownloader.RATE),
+                                DateUtils.formatElapsedTime(eta));
+                    }
+                    progress.setText(text);
+                    if (extras.getString(XKCDDownloader.TITLE) != null) {
+                        title.setText(extras.getString(XKCDDownloader.TITLE));
+                    }
                     break;
                 case XKCDDownloader.DOWNLOAD_FAIL:
                     progress.setText("Failed :(");
@@ -115,7 +128,7 @@ public class DownloadActivity extends AppCompatActivity implements View.OnClickL
         LocalBroadcastManager.getInstance(this).registerReceiver(receiver, intentFilter);
 
         Intent intent = new Intent(this, XKCDDownloader.class);
-        intent.setAction(XKCDDownloader.DOWNLOAD_ALL);
+        intent.setAction(XKCDDownloader.DOWNLOAD_INDEX);
         startService(intent);
 
         pageTitle.setText(getResources().getString(R.string.action_download_all_comics));
@@ -124,4 +137,11 @@ public class DownloadActivity extends AppCompatActivity implements View.OnClickL
         downloadUI.setVisibility(View.VISIBLE);
         progressBar.setIndeterminate(true);
     }
+
+    @Override
+    protected void onDestroy() {
+        // The download outlives this screen and keeps broadcasting after it is gone
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(receiver);
+        super.onDestroy();
+    }
 }
@@ -33,7 +33,8 @@ import android.widget.TextView;
 import com.squareup.picasso.Picasso;
 import com.tanmay.blip.R;
 import com.tanmay.blip.database.DatabaseManager;
-import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.database.QueryRunner;
+import com.tanmay.blip.models.ComicSummary;
 import com.tanmay.blip.utils.BlipUtils;
 
 import uk.co.senab.photoview.PhotoViewAttacher;
@@ -43,7 +44,7 @@ public class ImageActivity extends AppCompatActivity implements PhotoViewAttache
     public static final String EXTRA_NUM = "num";
     public static final String EXTRA_IMAGE = "comic";
     ImageView photo;
-    private DatabaseManager databaseManager;
+    private QueryRunner queries;
     private PhotoViewAttacher photoViewAttacher;
     private View topBar, close;
     private TextView title, number;
@@ -65,9 +66,8 @@ public class ImageActivity extends AppCompatActivity implements PhotoViewAttache
             getWindow().addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
             getWindow().addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION);
         }
-        databaseManager = new DatabaseManager(this);
-        int num = getIntent().getExtras().getInt(EXTRA_NUM);
-        final Comic comic = databaseManager.getComic(num);
+        queries = new QueryRunner();
+        final int num = getIntent().getExtras().getInt(EXTRA_NUM);
 
         topBar = findViewById(R.id.topBar);
         close = findViewById(R.id.close);
@@ -76,8 +76,19 @@ public class ImageActivity extends AppCompatActivity implements PhotoViewAttache
 
         number.setText(String.valueOf(num));
         close.setOnClickListener(this);
-        title.setText(comic.getTitle());
         photo = (ImageView) findViewById(R.id.img);
+        queries.run("comic", new QueryRunner.Query<ComicSummary>() {
+            @Override
+            public ComicSummary run(DatabaseManager databaseManager) {
+                return databaseManager.getComicSummary(num);
+            }
+        }, new QueryRunner.Callback<ComicSummary>() {
+            @Override
+            public void onResult(ComicSummary comic) {
+                title.setText(comic.getTitle());
+                Picasso.with(ImageActivity.this).load(comic.getImg()).into(photo);
+            }
+        });
         topBar.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
             @Override
             public void onGlobalLayout() {
@@ -92,7 +103,6 @@ public class ImageActivity extends AppCompatActivity implements PhotoViewAttache
                 } else {
                     photo.setPadding(0, topBar.getHeight(), 0, 0);
                 }
-                Picasso.with(ImageActivity.this).load(comic.getImg()).into(photo);
                 photoViewAttacher = new PhotoViewAttacher(photo);
                 photoViewAttacher.setOnPhotoTapListener(ImageActivity.this);
                 photoViewAttacher.setScaleType(ImageView.ScaleType.FIT_CENTER);
@@ -105,6 +115,7 @@ public class ImageActivity extends AppCompatActivity implements PhotoViewAttache
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        queries.cancelAll();
         photoViewAttacher.cleanup();
     }
 
@@ -88,7 +88,7 @@ public class MainActivity extends BaseActivity {
             intentFilter.addAction(XKCDDownloader.DOWNLOAD_FAIL);
             LocalBroadcastManager.getInstance(this).registerReceiver(downloadReceiver, intentFilter);
             Intent intent = new Intent(this, XKCDDownloader.class);
-            intent.setAction(XKCDDownloader.DOWNLOAD_TODAY);
+            intent.setAction(XKCDDownloader.DOWNLOAD_NEW);
             startService(intent);
         }
     }
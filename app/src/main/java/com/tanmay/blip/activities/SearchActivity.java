@@ -39,7 +39,9 @@ import com.squareup.picasso.Picasso;
 import com.tanmay.blip.BlipApplication;
 import com.tanmay.blip.R;
 import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.QueryRunner;
 import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
 import com.tanmay.blip.utils.BlipUtils;
 import com.tanmay.blip.utils.SpeechSynthesizer;
 
@@ -48,11 +50,13 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 
 public class SearchActivity extends AppCompatActivity implements TextWatcher, View.OnClickListener {
 
-    private DatabaseManager databaseManager;
+    private QueryRunner queries;
     private RecyclerView recyclerView;
     private EditText searchBar;
     private View home, clear;
@@ -62,7 +66,26 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_search);
-        databaseManager = new DatabaseManager(this);
+        queries = new QueryRunner();
+        queries.observe(new QueryRunner.Callback<Set<Integer>>() {
+            @Override
+            public void onResult(final Set<Integer> nums) {
+                if (!adapter.contains(nums)) {
+                    return;
+                }
+                queries.run(new QueryRunner.Query<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public Map<Integer, ComicSummary> run(DatabaseManager databaseManager) {
+                        return databaseManager.getComicSummaries(nums);
+                    }
+                }, new QueryRunner.Callback<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public void onResult(Map<Integer, ComicSummary> result) {
+                        adapter.applyChanges(result);
+                    }
+                });
+            }
+        });
 
         recyclerView = (RecyclerView) findViewById(R.id.results);
         StaggeredGridLayoutManager layoutManager;
@@ -88,11 +111,27 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
 
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count) {
-        if (!s.toString().equals("")) {
-            adapter.updateList(databaseManager.search(s.toString()));
-        } else {
-            adapter.updateList(Collections.<Comic>emptyList());
-        }
+        final String keyWord = s.toString();
+        queries.run("search", new QueryRunner.Query<List<ComicSummary>>() {
+            @Override
+            public List<ComicSummary> run(DatabaseManager databaseManager) {
+                if (keyWord.equals("")) {
+                    return Collections.emptyList();
+                }
+                return databaseManager.search(keyWord);
+            }
+        }, new QueryRunner.Callback<List<ComicSummary>>() {
+            @Override
+            public void onResult(List<ComicSummary> result) {
+                adapter.updateList(result);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        queries.cancelAll();
     }
 
     @Override
@@ -120,7 +159,7 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
 
     public class SearchListAdapter extends RecyclerView.Adapter<SearchListAdapter.ViewHolder> {
 
-        List<Comic> comics = Collections.emptyList();
+        List<ComicSummary> comics = Collections.emptyList();
         SimpleDateFormat simpleDateFormat;
 
         public SearchListAdapter() {
@@ -130,11 +169,30 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
             new Picasso.Builder(SearchActivity.this).downloader(new OkHttpDownloader(picassoClient)).build();
         }
 
-        public void updateList(List<Comic> comics) {
+        public void updateList(List<ComicSummary> comics) {
             this.comics = comics;
             notifyDataSetChanged();
         }
 
+        public boolean contains(Set<Integer> nums) {
+            for (ComicSummary comic : comics) {
+                if (nums.contains(comic.getNum())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void applyChanges(Map<Integer, ComicSummary> changed) {
+            for (int i = 0; i < comics.size(); i++) {
+                ComicSummary updated = changed.get(comics.get(i).getNum());
+                if (updated != null) {
+                    comics.set(i, updated);
+                    notifyItemChanged(i);
+                }
+            }
+        }
+
         @Override
         public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             View view = getLayoutInflater().inflate(R.layout.item_comic, parent, false);
@@ -143,14 +201,14 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
 
         @Override
         public void onBindViewHolder(ViewHolder holder, int position) {
-            Comic comic = comics.get(position);
+            ComicSummary comic = comics.get(position);
 
             holder.title.setText(comic.getNum() + ". " + comic.getTitle());
 
             Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.YEAR, Integer.parseInt(comic.getYear()));
-            calendar.set(Calendar.MONTH, Integer.parseInt(comic.getMonth()) - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(comic.getDay()));
+            calendar.set(Calendar.YEAR, comic.getYear());
+            calendar.set(Calendar.MONTH, comic.getMonth() - 1);
+            calendar.set(Calendar.DAY_OF_MONTH, comic.getDay());
             holder.date.setText(simpleDateFormat.format(calendar.getTime()));
 
             holder.alt.setText(comic.getAlt());
@@ -208,37 +266,48 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
                         startActivity(intent);
                         break;
                     case R.id.transcript:
-                        String content = comics.get(position).getTranscript();
-                        if (content.equals("")) {
-                            content = getResources().getString(R.string.message_no_transcript);
-                        }
-                        final String speakingContent = content;
-                        new MaterialDialog.Builder(SearchActivity.this)
-                                .title(R.string.title_dialog_transcript)
-                                .content(content)
-                                .negativeText(R.string.negative_text_dialog)
-                                .neutralText(R.string.neutral_text_dialog_speak)
-                                .autoDismiss(false)
-                                .callback(new MaterialDialog.ButtonCallback() {
-                                    @Override
-                                    public void onNegative(MaterialDialog dialog) {
-                                        super.onNegative(dialog);
-                                        dialog.dismiss();
-                                    }
-
-                                    @Override
-                                    public void onNeutral(MaterialDialog dialog) {
-                                        super.onNeutral(dialog);
-                                        SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
-                                    }
-                                })
-                                .dismissListener(new DialogInterface.OnDismissListener() {
-                                    @Override
-                                    public void onDismiss(DialogInterface dialog) {
-                                        SpeechSynthesizer.getInstance().stopSpeaking();
-                                    }
-                                })
-                                .show();
+                        final int transcriptNum = comics.get(position).getNum();
+                        queries.run("transcript", new QueryRunner.Query<Comic>() {
+                            @Override
+                            public Comic run(DatabaseManager databaseManager) {
+                                return databaseManager.getComic(transcriptNum);
+                            }
+                        }, new QueryRunner.Callback<Comic>() {
+                            @Override
+                            public void onResult(Comic comic) {
+                                String content = comic.getTranscript();
+                                if (content == null || content.isEmpty()) {
+                                    content = getResources().getString(R.string.message_no_transcript);
+                                }
+                                final String speakingContent = content;
+                                new MaterialDialog.Builder(SearchActivity.this)
+                                        .title(R.string.title_dialog_transcript)
+                                        .content(content)
+                                        .negativeText(R.string.negative_text_dialog)
+                                        .neutralText(R.string.neutral_text_dialog_speak)
+                                        .autoDismiss(false)
+                                        .callback(new MaterialDialog.ButtonCallback() {
+                                            @Override
+                                            public void onNegative(MaterialDialog dialog) {
+                                                super.onNegative(dialog);
+                                                dialog.dismiss();
+                                            }
+
+                                            @Override
+                                            public void onNeutral(MaterialDialog dialog) {
+                                                super.onNeutral(dialog);
+                                                SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
+                                            }
+                                        })
+                                        .dismissListener(new DialogInterface.OnDismissListener() {
+                                            @Override
+                                            public void onDismiss(DialogInterface dialog) {
+                                                SpeechSynthesizer.getInstance().stopSpeaking();
+                                            }
+                                        })
+                                        .show();
+                            }
+                        });
                         break;
                     case R.id.img_container:
                         ImageActivity.launch(SearchActivity.this, img, comics.get(position).getNum());
@@ -246,7 +315,14 @@ public class SearchActivity extends AppCompatActivity implements TextWatcher, Vi
                     case R.id.favourite:
                         boolean fav = comics.get(position).isFavourite();
                         comics.get(position).setFavourite(!fav);
-                        databaseManager.setFavourite(comics.get(position).getNum(), !fav);
+                        final int favNum = comics.get(position).getNum();
+                        final boolean newFav = !fav;
+                        queries.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                DatabaseManager.getInstance().setFavourite(favNum, newFav);
+                            }
+                        });
                         if (fav) {
                             //remove from fav
                             favourite.setColorFilter(getResources().getColor(R.color.icons_dark));
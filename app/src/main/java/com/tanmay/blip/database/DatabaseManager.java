@@ -21,18 +21,33 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
+import com.tanmay.blip.models.TranscriptCheck;
+import com.tanmay.blip.models.Validators;
 import com.tanmay.blip.utils.BlipUtils;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DatabaseManager extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "XKCD";
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 7;
 
     private static final String TYPE_TEXT = " TEXT";
     private static final String TYPE_INTEGER = " INTEGER";
@@ -53,6 +68,57 @@ public class DatabaseManager extends SQLiteOpenHelper {
     private static final String TITLE = "title";
     private static final String DAY = "day";
     private static final String FAV = "fav";
+    private static final String DATE = "date";
+
+    // Columns needed to render a list row
+    private static final String SUMMARY_COLUMNS = TABLE_XKCD + "." + NUM + COMMA_SEP + TABLE_XKCD + "." + TITLE + COMMA_SEP +
+            TABLE_XKCD + "." + ALT + COMMA_SEP + TABLE_XKCD + "." + IMG + COMMA_SEP + TABLE_XKCD + "." + DATE + COMMA_SEP +
+            TABLE_XKCD + "." + FAV;
+
+    private static final String TABLE_VALIDATORS = "XKCD_Validators";
+    private static final String URL = "url";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last_modified";
+
+    private static final String TABLE_UNAVAILABLE = "XKCD_Unavailable";
+    private static final String REASON = "reason";
+    private static final String EXPIRES = "expires";
+
+    private static final String TABLE_TRANSCRIPT_CHECKS = "XKCD_TranscriptChecks";
+    private static final String ATTEMPTS = "attempts";
+    private static final String LAST_CHECK = "last_check";
+    private static final String NEXT_CHECK = "next_check";
+    private static final String OUTCOME = "outcome";
+
+    private static final String TABLE_SEARCH = "XKCD_Search";
+    private static final String DOC_ID = "docid";
+
+    private static final String CREATE_SEARCH_TABLE =
+            "CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4(content=\"" + TABLE_XKCD + "\"" + COMMA_SEP +
+                    TITLE + COMMA_SEP + SAFE_TITLE + COMMA_SEP + ALT + COMMA_SEP + TRANSCRIPT + ")";
+
+    private static final String SEARCH_COLUMNS = TITLE + COMMA_SEP + SAFE_TITLE + COMMA_SEP + ALT + COMMA_SEP + TRANSCRIPT;
+
+    // Only edits to indexed columns touch the index, so toggling a favourite does not rewrite the transcript
+    private static final String[] CREATE_SEARCH_UPDATE_TRIGGERS = {
+            "CREATE TRIGGER " + TABLE_SEARCH + "_bu BEFORE UPDATE OF " + SEARCH_COLUMNS + " ON " + TABLE_XKCD + " BEGIN " +
+                    "DELETE FROM " + TABLE_SEARCH + " WHERE " + DOC_ID + " = old." + NUM + "; END",
+            "CREATE TRIGGER " + TABLE_SEARCH + "_au AFTER UPDATE OF " + SEARCH_COLUMNS + " ON " + TABLE_XKCD + " BEGIN " +
+                    "INSERT INTO " + TABLE_SEARCH + "(" + DOC_ID + COMMA_SEP + SEARCH_COLUMNS + ") VALUES (new." + NUM +
+                    ", new." + TITLE + ", new." + SAFE_TITLE + ", new." + ALT + ", new." + TRANSCRIPT + "); END"
+    };
+
+    private static final String[] CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER " + TABLE_SEARCH + "_bd BEFORE DELETE ON " + TABLE_XKCD + " BEGIN " +
+                    "DELETE FROM " + TABLE_SEARCH + " WHERE " + DOC_ID + " = old." + NUM + "; END",
+            "CREATE TRIGGER " + TABLE_SEARCH + "_ai AFTER INSERT ON " + TABLE_XKCD + " BEGIN " +
+                    "INSERT INTO " + TABLE_SEARCH + "(" + DOC_ID + COMMA_SEP + SEARCH_COLUMNS + ") VALUES (new." + NUM +
+                    ", new." + TITLE + ", new." + SAFE_TITLE + ", new." + ALT + ", new." + TRANSCRIPT + "); END"
+    };
+
+    // Relative weight of a hit in title, safe_title, alt and transcript when ranking search results
+    private static final int[] SEARCH_WEIGHTS = {8, 8, 3, 1};
+    private static final int SEARCH_LIMIT = 100;
 
     private static final String CREATE_TABLE =
             "CREATE TABLE " + TABLE_XKCD + "(" +
@@ -69,241 +135,700 @@ public class DatabaseManager extends SQLiteOpenHelper {
                     DAY + TYPE_TEXT + COMMA_SEP +
                     FAV + TYPE_INTEGER + ")";
 
-    private static final String DELETE_TABLE =
-            "DROP TABLE IF EXISTS " + TABLE_XKCD;
+    // REPLACE rewrites the whole row, so the stored fav flag is carried over and only a new row takes it from the comic
+    private static final String UPSERT =
+            "INSERT OR REPLACE INTO " + TABLE_XKCD + "(" +
+                    MONTH + COMMA_SEP + NUM + COMMA_SEP + LINK + COMMA_SEP + YEAR + COMMA_SEP +
+                    NEWS + COMMA_SEP + SAFE_TITLE + COMMA_SEP + TRANSCRIPT + COMMA_SEP + ALT + COMMA_SEP +
+                    IMG + COMMA_SEP + TITLE + COMMA_SEP + DAY + COMMA_SEP + FAV + COMMA_SEP + DATE +
+                    ") VALUES (?1,?2,?3,?4,?5,?6,?7,?8,?9,?10,?11," +
+                    "COALESCE((SELECT " + FAV + " FROM " + TABLE_XKCD + " WHERE " + NUM + " = ?2), ?12),?13)";
+
+    // Rows seeded from the archive index never overwrite a comic that is already stored
+    private static final String INSERT_SKELETON =
+            "INSERT OR IGNORE INTO " + TABLE_XKCD + "(" +
+                    NUM + COMMA_SEP + TITLE + COMMA_SEP + SAFE_TITLE + COMMA_SEP + YEAR + COMMA_SEP +
+                    MONTH + COMMA_SEP + DAY + COMMA_SEP + DATE + COMMA_SEP + FAV + ") VALUES (?,?,?,?,?,?,?,0)";
+
+    private static final String UPDATE_FAV =
+            "UPDATE " + TABLE_XKCD + " SET " + FAV + " = ? WHERE " + NUM + " = ?";
+
+    private static DatabaseManager mInstance;
+
+    private SQLiteStatement upsertStatement;
+    private SQLiteStatement favouriteStatement;
+    private long upsertNanos;
+
+    private final List<OnComicsChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Called on the writing thread after a write that touched the given comic numbers has committed.
+     */
+    public interface OnComicsChangedListener {
+        /**
+         * @param favourites whether the write changed the favourite flag of these comics. Other writes
+         *                   never do: an upsert keeps the flag of a stored comic.
+         */
+        void onComicsChanged(Set<Integer> nums, boolean favourites);
+    }
+
+    DatabaseManager(Context context, String name) {
+        super(context, name, null, DB_VERSION);
+        // WAL lets the UI keep reading from the connection pool while the downloader holds the write lock
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static void create(Context context) {
+        create(context, DB_NAME);
+    }
+
+    /**
+     * Points {@link #getInstance()} at the named database, so tests that drive the app end to end can run
+     * against scratch data.
+     */
+    public static void create(Context context, String name) {
+        mInstance = new DatabaseManager(context.getApplicationContext(), name);
+    }
+
+    public static DatabaseManager getInstance() {
+        return mInstance;
+    }
+
+    public void registerListener(OnComicsChangedListener listener) {
+        listeners.add(listener);
+    }
 
-    public DatabaseManager(Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+    public void unregisterListener(OnComicsChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyComicsChanged(Set<Integer> nums, boolean favourites) {
+        if (nums.isEmpty()) {
+            return;
+        }
+        Set<Integer> changed = Collections.unmodifiableSet(nums);
+        for (OnComicsChangedListener listener : listeners) {
+            listener.onComicsChanged(changed, favourites);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Without this the implicit delete done by INSERT OR REPLACE skips the search index triggers
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (upsertStatement != null) {
+            upsertStatement.close();
+            upsertStatement = null;
+        }
+        if (favouriteStatement != null) {
+            favouriteStatement.close();
+            favouriteStatement = null;
+        }
+        super.close();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE);
+        onUpgrade(db, 1, DB_VERSION);
     }
 
+    /**
+     * Brings the schema up one version at a time, so every install ends up with the same tables
+     * regardless of the version it started from. Never drop user data in a migration.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(DELETE_TABLE);
-        onCreate(db);
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrate(db, version);
+        }
     }
 
-    public void addComic(Comic comic) {
-        if (comicExists(comic)) {
-            return;
+    private void migrate(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                db.execSQL(CREATE_SEARCH_TABLE);
+                for (String trigger : CREATE_SEARCH_TRIGGERS) {
+                    db.execSQL(trigger);
+                }
+                for (String trigger : CREATE_SEARCH_UPDATE_TRIGGERS) {
+                    db.execSQL(trigger);
+                }
+                db.execSQL("INSERT INTO " + TABLE_SEARCH + "(" + TABLE_SEARCH + ") VALUES ('rebuild')");
+                break;
+            case 3:
+                db.execSQL("ALTER TABLE " + TABLE_XKCD + " ADD COLUMN " + DATE + TYPE_INTEGER);
+                db.execSQL("UPDATE " + TABLE_XKCD + " SET " + DATE + " = CAST(" + YEAR + " AS INTEGER) * 10000 + CAST(" +
+                        MONTH + " AS INTEGER) * 100 + CAST(" + DAY + " AS INTEGER)");
+                db.execSQL("CREATE INDEX " + TABLE_XKCD + "_" + FAV + " ON " + TABLE_XKCD + "(" + FAV + ")");
+                db.execSQL("CREATE INDEX " + TABLE_XKCD + "_" + DATE + " ON " + TABLE_XKCD + "(" + DATE + ")");
+                break;
+            case 4:
+                db.execSQL("CREATE TABLE " + TABLE_VALIDATORS + "(" +
+                        URL + TYPE_TEXT + PRIMARY_KEY + COMMA_SEP +
+                        ETAG + TYPE_TEXT + COMMA_SEP +
+                        LAST_MODIFIED + TYPE_TEXT + ")");
+                break;
+            case 5:
+                db.execSQL("CREATE TABLE " + TABLE_UNAVAILABLE + "(" +
+                        NUM + TYPE_INTEGER + PRIMARY_KEY + COMMA_SEP +
+                        REASON + TYPE_TEXT + COMMA_SEP +
+                        EXPIRES + TYPE_INTEGER + ")");
+                break;
+            case 6:
+                db.execSQL("CREATE TABLE " + TABLE_TRANSCRIPT_CHECKS + "(" +
+                        NUM + TYPE_INTEGER + PRIMARY_KEY + COMMA_SEP +
+                        ATTEMPTS + TYPE_INTEGER + COMMA_SEP +
+                        LAST_CHECK + TYPE_INTEGER + COMMA_SEP +
+                        NEXT_CHECK + TYPE_INTEGER + COMMA_SEP +
+                        OUTCOME + TYPE_TEXT + ")");
+                break;
+            case 7:
+                // Version 2 created the update triggers on every column
+                db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_SEARCH + "_bu");
+                db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_SEARCH + "_au");
+                for (String trigger : CREATE_SEARCH_UPDATE_TRIGGERS) {
+                    db.execSQL(trigger);
+                }
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
         }
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(MONTH, comic.getMonth());
-        values.put(NUM, comic.getNum());
-        values.put(LINK, comic.getLink());
-        values.put(YEAR, comic.getYear());
-        values.put(NEWS, comic.getNews());
-        values.put(SAFE_TITLE, comic.getSafe_title());
-        values.put(TRANSCRIPT, comic.getTranscript());
-        values.put(ALT, comic.getAlt());
-        values.put(IMG, comic.getImg());
-        values.put(TITLE, comic.getTitle());
-        values.put(DAY, comic.getDay());
-        values.put(FAV, comic.isFavourite() ? 1 : 0);
-
-        getWritableDatabase().insert(TABLE_XKCD, null, values);
-    }
-
-    public void setFavourite(int num, boolean fav) {
-        if (!comicExists(getComic(num))) {
+    private static int dateKey(int day, int month, int year) {
+        return year * 10000 + month * 100 + day;
+    }
+
+    private static int dateKey(Comic comic) {
+        try {
+            return dateKey(Integer.parseInt(comic.getDay()), Integer.parseInt(comic.getMonth()), Integer.parseInt(comic.getYear()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void upsertComic(Comic comic) {
+        upsertComics(Collections.singletonList(comic));
+    }
+
+    /**
+     * Inserts new comics and overwrites existing ones in a single transaction, keeping the
+     * favourite flag of rows that are already stored.
+     */
+    public synchronized void upsertComics(List<Comic> comics) {
+        if (comics.isEmpty()) {
             return;
         }
 
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(FAV, fav ? 1 : 0);
-        getWritableDatabase().update(TABLE_XKCD, contentValues, NUM + " = ?", new String[]{String.valueOf(num)});
+        SQLiteDatabase db = getWritableDatabase();
+        if (upsertStatement == null) {
+            upsertStatement = db.compileStatement(UPSERT);
+        }
+        Set<Integer> nums = new HashSet<>();
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (Comic comic : comics) {
+                nums.add(comic.getNum());
+                upsertStatement.clearBindings();
+                bindString(upsertStatement, 1, comic.getMonth());
+                upsertStatement.bindLong(2, comic.getNum());
+                bindString(upsertStatement, 3, comic.getLink());
+                bindString(upsertStatement, 4, comic.getYear());
+                bindString(upsertStatement, 5, comic.getNews());
+                bindString(upsertStatement, 6, comic.getSafe_title());
+                bindString(upsertStatement, 7, comic.getTranscript());
+                bindString(upsertStatement, 8, comic.getAlt());
+                bindString(upsertStatement, 9, comic.getImg());
+                bindString(upsertStatement, 10, comic.getTitle());
+                bindString(upsertStatement, 11, comic.getDay());
+                upsertStatement.bindLong(12, comic.isFavourite() ? 1 : 0);
+                upsertStatement.bindLong(13, dateKey(comic));
+                upsertStatement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            upsertNanos += System.nanoTime() - start;
+        }
+        notifyComicsChanged(nums, false);
+    }
+
+    /**
+     * Total time spent in {@link #upsertComics(List)} transactions since this instance was created.
+     */
+    public synchronized long getUpsertNanos() {
+        return upsertNanos;
     }
 
-    public void updateComic(Comic comic) {
-        if (!comicExists(comic)) {
+    /**
+     * Stores comics known only from the archive index, leaving comics that are already stored alone. Their
+     * img is null, which is what marks them as still to be downloaded in full.
+     *
+     * @return the number of rows added
+     */
+    public synchronized int insertSkeletons(List<Comic> comics) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(INSERT_SKELETON);
+        Set<Integer> nums = new HashSet<>();
+        db.beginTransaction();
+        try {
+            for (Comic comic : comics) {
+                statement.clearBindings();
+                statement.bindLong(1, comic.getNum());
+                bindString(statement, 2, comic.getTitle());
+                bindString(statement, 3, comic.getSafe_title());
+                bindString(statement, 4, comic.getYear());
+                bindString(statement, 5, comic.getMonth());
+                bindString(statement, 6, comic.getDay());
+                statement.bindLong(7, dateKey(comic));
+                if (statement.executeInsert() != -1) {
+                    nums.add(comic.getNum());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        notifyComicsChanged(nums, false);
+        return nums.size();
+    }
+
+    /**
+     * Number of rows seeded from the archive index that are still waiting for their details.
+     */
+    public int getSkeletonCount() {
+        int count = 0;
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT count(*) FROM " + TABLE_XKCD + " WHERE " + IMG + " IS NULL", null);
+        if (cursor != null && cursor.moveToFirst()) {
+            count = cursor.getInt(0);
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        return count;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    public synchronized void setFavourite(int num, boolean fav) {
+        if (favouriteStatement == null) {
+            favouriteStatement = getWritableDatabase().compileStatement(UPDATE_FAV);
+        }
+        favouriteStatement.bindLong(1, fav ? 1 : 0);
+        favouriteStatement.bindLong(2, num);
+        if (favouriteStatement.executeUpdateDelete() > 0) {
+            notifyComicsChanged(Collections.singleton(num), true);
+        }
+    }
+
+    /**
+     * Validators the server sent with the stored copy of {@code url}, or null if it sent none.
+     */
+    public Validators getValidators(String url) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + ETAG + COMMA_SEP + LAST_MODIFIED + " FROM " + TABLE_VALIDATORS +
+                " WHERE " + URL + " = ?", new String[]{url});
+        Validators validators = null;
+        if (cursor != null && cursor.moveToFirst()) {
+            validators = new Validators();
+            validators.setETag(cursor.getString(0));
+            validators.setLastModified(cursor.getString(1));
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        return validators;
+    }
+
+    /**
+     * Remembers the validators of the copy of {@code url} that was just stored. Call it only after the
+     * copy itself is written, or a later 304 could vouch for data that never made it to disk.
+     */
+    public void putValidators(String url, String eTag, String lastModified) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (eTag == null && lastModified == null) {
+            db.delete(TABLE_VALIDATORS, URL + " = ?", new String[]{url});
             return;
         }
+        ContentValues values = new ContentValues();
+        values.put(URL, url);
+        values.put(ETAG, eTag);
+        values.put(LAST_MODIFIED, lastModified);
+        db.insertWithOnConflict(TABLE_VALIDATORS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
 
+    /**
+     * Remembers that {@code num} cannot be downloaded, so nothing asks for it again until {@code ttlMillis}
+     * have passed.
+     */
+    public void markUnavailable(int num, String reason, long ttlMillis) {
         ContentValues values = new ContentValues();
-        values.put(MONTH, comic.getMonth());
-        values.put(NUM, comic.getNum());
-        values.put(LINK, comic.getLink());
-        values.put(YEAR, comic.getYear());
-        values.put(NEWS, comic.getNews());
-        values.put(SAFE_TITLE, comic.getSafe_title());
-        values.put(TRANSCRIPT, comic.getTranscript());
-        values.put(ALT, comic.getAlt());
-        values.put(IMG, comic.getImg());
-        values.put(TITLE, comic.getTitle());
-        values.put(DAY, comic.getDay());
-        values.put(FAV, comic.isFavourite() ? 1 : 0);
-
-        getWritableDatabase().update(TABLE_XKCD, values, NUM + " = ?", new String[]{String.valueOf(comic.getNum())});
+        values.put(NUM, num);
+        values.put(REASON, reason);
+        values.put(EXPIRES, System.currentTimeMillis() + ttlMillis);
+        getWritableDatabase().insertWithOnConflict(TABLE_UNAVAILABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Why {@code num} cannot be downloaded, or null if it is not known to be unavailable or that has expired.
+     */
+    public String getUnavailableReason(int num) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + REASON + " FROM " + TABLE_UNAVAILABLE +
+                " WHERE " + NUM + " = ? AND " + EXPIRES + " > ?", new String[]{String.valueOf(num), String.valueOf(System.currentTimeMillis())});
+        String reason = null;
+        if (cursor != null && cursor.moveToFirst()) {
+            reason = cursor.getString(0);
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        return reason;
+    }
+
+    /**
+     * Numbers currently known to be unavailable.
+     */
+    public Set<Integer> getUnavailableNums() {
+        Set<Integer> nums = new HashSet<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " + TABLE_UNAVAILABLE + " WHERE " + EXPIRES + " > ?",
+                new String[]{String.valueOf(System.currentTimeMillis())});
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                nums.add(cursor.getInt(0));
+            }
+            cursor.close();
+        }
+        return nums;
+    }
+
+    /**
+     * Numbers up to {@code to} whose unavailable mark has expired and that are still not stored, in
+     * ascending order. Range scans never look below the import checkpoint, so these are due for another
+     * try through this instead.
+     */
+    public List<Integer> getExpiredUnavailableNums(int to) {
+        List<Integer> nums = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " + TABLE_UNAVAILABLE + " WHERE " + NUM + " <= ?" +
+                " AND " + EXPIRES + " <= ? AND " + NUM + " NOT IN (SELECT " + NUM + " FROM " + TABLE_XKCD + " WHERE " + IMG + " IS NOT NULL)" +
+                " ORDER BY " + NUM, new String[]{String.valueOf(to), String.valueOf(System.currentTimeMillis())});
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                nums.add(cursor.getInt(0));
+            }
+            cursor.close();
+        }
+        return nums;
     }
 
     public Comic getComic(int num) {
         Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD + " WHERE " + NUM + " = ?",
                 new String[]{String.valueOf(num)});
+        Comic comic = null;
         if (cursor != null && cursor.getCount() != 0) {
             cursor.moveToFirst();
-            Comic comic = new Comic();
-            comic.setMonth(cursor.getString(0));
-            comic.setNum(cursor.getInt(1));
-            comic.setLink(cursor.getString(2));
-            comic.setYear(cursor.getString(3));
-            comic.setNews(cursor.getString(4));
-            comic.setSafe_title(cursor.getString(5));
-            comic.setTranscript(cursor.getString(6));
-            comic.setAlt(cursor.getString(7));
-            comic.setImg(cursor.getString(8));
-            comic.setTitle(cursor.getString(9));
-            comic.setDay(cursor.getString(10));
-            comic.setFavourite(cursor.getInt(11) == 1);
+            comic = new ComicMapper(cursor).toComic();
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        return comic;
+    }
+
+    public ComicSummary getComicSummary(int num) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + SUMMARY_COLUMNS + " FROM " + TABLE_XKCD + " WHERE " + NUM + " = ?",
+                new String[]{String.valueOf(num)});
+        ComicSummary comic = null;
+        if (cursor != null && cursor.getCount() != 0) {
+            cursor.moveToFirst();
+            comic = new ComicMapper(cursor).toSummary();
+        }
+        if (cursor != null) {
             cursor.close();
-            return comic;
         }
-        return null;
+        return comic;
+    }
+
+    public Map<Integer, ComicSummary> getComicSummaries(Collection<Integer> nums) {
+        Map<Integer, ComicSummary> comics = new HashMap<>();
+        List<Integer> remaining = new ArrayList<>(nums);
+        // Stay well below SQLite's limit on bound parameters per statement
+        for (int from = 0; from < remaining.size(); from += 500) {
+            List<Integer> chunk = remaining.subList(from, Math.min(from + 500, remaining.size()));
+            String[] args = new String[chunk.size()];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < args.length; i++) {
+                args[i] = String.valueOf(chunk.get(i));
+                placeholders.append(i == 0 ? "?" : ",?");
+            }
+            Cursor cursor = getReadableDatabase().rawQuery("SELECT " + SUMMARY_COLUMNS + " FROM " + TABLE_XKCD +
+                    " WHERE " + NUM + " IN (" + placeholders + ")", args);
+            if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
+                ComicMapper mapper = new ComicMapper(cursor);
+                do {
+                    ComicSummary comic = mapper.toSummary();
+                    comics.put(comic.getNum(), comic);
+                } while (cursor.moveToNext());
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return comics;
     }
 
     public List<Comic> getAllComics() {
         List<Comic> comics = Collections.emptyList();
         Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD, null);
         if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
-            comics = new ArrayList<>();
+            comics = new ArrayList<>(cursor.getCount());
+            ComicMapper mapper = new ComicMapper(cursor);
             do {
-                Comic comic = new Comic();
-                comic.setMonth(cursor.getString(0));
-                comic.setNum(cursor.getInt(1));
-                comic.setLink(cursor.getString(2));
-                comic.setYear(cursor.getString(3));
-                comic.setNews(cursor.getString(4));
-                comic.setSafe_title(cursor.getString(5));
-                comic.setTranscript(cursor.getString(6));
-                comic.setAlt(cursor.getString(7));
-                comic.setImg(cursor.getString(8));
-                comic.setTitle(cursor.getString(9));
-                comic.setDay(cursor.getString(10));
-                comic.setFavourite(cursor.getInt(11) == 1);
-                comics.add(comic);
+                comics.add(mapper.toComic());
             } while (cursor.moveToNext());
+        }
+        if (cursor != null) {
             cursor.close();
         }
         return comics;
     }
 
-    public List<Integer> getAllMissingTranscripts() {
-        List<Integer> nums = Collections.emptyList();
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " +
-                TABLE_XKCD + " WHERE " + TRANSCRIPT + " = ''", null);
-        if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
-            nums = new ArrayList<>();
-            do {
-                nums.add(cursor.getInt(0));
-            } while (cursor.moveToNext());
+    /**
+     * Comics without a transcript whose next check is due at {@code now}, newest first and at most
+     * {@code limit} of them. Comics that were never checked are always due.
+     */
+    public List<TranscriptCheck> getTranscriptChecksDue(long now, int limit) {
+        List<TranscriptCheck> checks = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + TABLE_XKCD + "." + NUM + COMMA_SEP + TABLE_XKCD + "." + DATE + COMMA_SEP +
+                        "COALESCE(" + TABLE_TRANSCRIPT_CHECKS + "." + ATTEMPTS + ", 0) FROM " + TABLE_XKCD +
+                        " LEFT JOIN " + TABLE_TRANSCRIPT_CHECKS + " ON " + TABLE_TRANSCRIPT_CHECKS + "." + NUM + " = " + TABLE_XKCD + "." + NUM +
+                        " WHERE " + TABLE_XKCD + "." + TRANSCRIPT + " = '' AND (" + TABLE_TRANSCRIPT_CHECKS + "." + NEXT_CHECK + " IS NULL OR " +
+                        TABLE_TRANSCRIPT_CHECKS + "." + NEXT_CHECK + " <= ?) ORDER BY " + TABLE_XKCD + "." + NUM + " DESC LIMIT ?",
+                new String[]{String.valueOf(now), String.valueOf(limit)});
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                TranscriptCheck check = new TranscriptCheck();
+                check.setNum(cursor.getInt(0));
+                check.setDate(cursor.getInt(1));
+                check.setAttempts(cursor.getInt(2));
+                checks.add(check);
+            }
             cursor.close();
         }
+        return checks;
+    }
 
-        return nums;
+    /**
+     * Records how a transcript check went and when the comic is due again.
+     *
+     * @param attempts checks that found no transcript so far, this one included if it did
+     */
+    public void recordTranscriptCheck(int num, int attempts, String outcome, long checkedAt, long nextCheck) {
+        ContentValues values = new ContentValues();
+        values.put(NUM, num);
+        values.put(ATTEMPTS, attempts);
+        values.put(OUTCOME, outcome);
+        values.put(LAST_CHECK, checkedAt);
+        values.put(NEXT_CHECK, nextCheck);
+        getWritableDatabase().insertWithOnConflict(TABLE_TRANSCRIPT_CHECKS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
     }
 
-    public List<Comic> search(String keyWord) {
-        List<Comic> comics = Collections.emptyList();
-        int num = 0;
-        if (BlipUtils.isNumeric(keyWord)) {
-            num = Integer.parseInt(keyWord);
-        }
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD + " WHERE " + TITLE +
-                " LIKE '%" + keyWord + "%' OR " + NUM + " = " + num, null);
-        if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
-            comics = new ArrayList<>();
-            do {
-                Comic comic = new Comic();
-                comic.setMonth(cursor.getString(0));
-                comic.setNum(cursor.getInt(1));
-                comic.setLink(cursor.getString(2));
-                comic.setYear(cursor.getString(3));
-                comic.setNews(cursor.getString(4));
-                comic.setSafe_title(cursor.getString(5));
-                comic.setTranscript(cursor.getString(6));
-                comic.setAlt(cursor.getString(7));
-                comic.setImg(cursor.getString(8));
-                comic.setTitle(cursor.getString(9));
-                comic.setDay(cursor.getString(10));
-                comic.setFavourite(cursor.getInt(11) == 1);
+    public List<ComicSummary> search(String keyWord) {
+        List<ComicSummary> comics = new ArrayList<>();
+        if (BlipUtils.isNumeric(keyWord.trim())) {
+            ComicSummary comic = getComicSummary(Integer.parseInt(keyWord.trim()));
+            if (comic != null) {
                 comics.add(comic);
-            } while (cursor.moveToNext());
+            }
+        }
+
+        String query = buildMatchQuery(keyWord);
+        if (query.isEmpty()) {
+            return comics;
+        }
+
+        // Rank on the index alone and only load the rows that make the cut
+        final Map<Integer, Integer> scores = new HashMap<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + DOC_ID + ", matchinfo(" + TABLE_SEARCH + ", 'pcx') FROM " +
+                TABLE_SEARCH + " WHERE " + TABLE_SEARCH + " MATCH ?", new String[]{query});
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                scores.put(cursor.getInt(0), rank(cursor.getBlob(1)));
+            }
             cursor.close();
         }
+
+        List<Integer> nums = new ArrayList<>(scores.keySet());
+        Collections.sort(nums, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                int byScore = scores.get(rhs).compareTo(scores.get(lhs));
+                return byScore != 0 ? byScore : rhs.compareTo(lhs);
+            }
+        });
+        if (!comics.isEmpty()) {
+            nums.remove(Integer.valueOf(comics.get(0).getNum()));
+        }
+        nums = nums.subList(0, Math.min(nums.size(), SEARCH_LIMIT - comics.size()));
+
+        Map<Integer, ComicSummary> summaries = getComicSummaries(nums);
+        for (int num : nums) {
+            ComicSummary comic = summaries.get(num);
+            if (comic != null) {
+                comics.add(comic);
+            }
+        }
         return comics;
     }
 
-    public List<Comic> getFeed() {
-        return getFeed(0);
+    /**
+     * Turns free text typed by the user into an FTS prefix query. Only letters and digits are kept so
+     * the input can never be interpreted as FTS operators.
+     */
+    private static String buildMatchQuery(String keyWord) {
+        StringBuilder query = new StringBuilder();
+        for (String token : keyWord.toLowerCase(Locale.US).split("[^\\p{L}\\p{Nd}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(token).append('*');
+        }
+        return query.toString();
+    }
+
+    /**
+     * Scores a row from its matchinfo('pcx') blob: the number of phrase hits in each column,
+     * weighted by {@link #SEARCH_WEIGHTS}.
+     */
+    private static int rank(byte[] matchInfo) {
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        int score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < SEARCH_WEIGHTS.length; column++) {
+                score += info.get(2 + 3 * (phrase * columns + column)) * SEARCH_WEIGHTS[column];
+            }
+        }
+        return score;
     }
 
-    public List<Comic> getFeed(int continuationNum) {
-        int continuation = getMax();
-        if (continuationNum != 0)
-            continuation = continuationNum;
+    /**
+     * @return every stored comic number, newest first
+     */
+    public int[] getFeedNums() {
+        int[] nums = new int[0];
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " + TABLE_XKCD + " ORDER BY " + NUM + " DESC", null);
+        if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
+            nums = new int[cursor.getCount()];
+            int i = 0;
+            do {
+                nums[i++] = cursor.getInt(0);
+            } while (cursor.moveToNext());
+        }
+        if (cursor != null) {
+            cursor.close();
+        }
+        return nums;
+    }
 
-        int low = continuation - 20;
-        if (low < 1) {
-            low = 1;
+    /**
+     * Numbers between {@code from} and {@code to} (both inclusive) that have no row yet, or only a skeleton
+     * row from the archive index, in ascending order. Numbers known to be unavailable are left out.
+     */
+    public List<Integer> getMissingNums(int from, int to) {
+        List<Integer> missing = new ArrayList<>();
+        if (from > to) {
+            return missing;
+        }
+        String low = String.valueOf(from);
+        String high = String.valueOf(to);
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " + TABLE_XKCD + " WHERE " + NUM + " BETWEEN ? AND ?" +
+                " AND " + IMG + " IS NOT NULL UNION SELECT " + NUM + " FROM " + TABLE_UNAVAILABLE + " WHERE " + NUM + " BETWEEN ? AND ?" +
+                " AND " + EXPIRES + " > ? ORDER BY " + NUM, new String[]{low, high, low, high, String.valueOf(System.currentTimeMillis())});
+        int next = from;
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                int num = cursor.getInt(0);
+                for (; next < num; next++) {
+                    missing.add(next);
+                }
+                next = num + 1;
+            }
+            cursor.close();
+        }
+        for (; next <= to; next++) {
+            missing.add(next);
         }
+        return missing;
+    }
 
-        List<Comic> comics = Collections.emptyList();
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD + " WHERE " + NUM + " <= ? AND " + NUM + " >= ?" +
-                        " ORDER BY " + NUM + " DESC",
-                new String[]{String.valueOf(continuation), String.valueOf(low)});
+    /**
+     * Keyset page of the feed: up to {@code limit} comics numbered below {@code beforeNum}, newest first.
+     */
+    public List<ComicSummary> getFeedPage(int beforeNum, int limit) {
+        List<ComicSummary> comics = Collections.emptyList();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + SUMMARY_COLUMNS + " FROM " + TABLE_XKCD + " WHERE " + NUM + " < ?" +
+                        " ORDER BY " + NUM + " DESC LIMIT ?",
+                new String[]{String.valueOf(beforeNum), String.valueOf(limit)});
         if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
-            comics = new ArrayList<>();
+            comics = new ArrayList<>(cursor.getCount());
+            ComicMapper mapper = new ComicMapper(cursor);
             do {
-                Comic comic = new Comic();
-                comic.setMonth(cursor.getString(0));
-                comic.setNum(cursor.getInt(1));
-                comic.setLink(cursor.getString(2));
-                comic.setYear(cursor.getString(3));
-                comic.setNews(cursor.getString(4));
-                comic.setSafe_title(cursor.getString(5));
-                comic.setTranscript(cursor.getString(6));
-                comic.setAlt(cursor.getString(7));
-                comic.setImg(cursor.getString(8));
-                comic.setTitle(cursor.getString(9));
-                comic.setDay(cursor.getString(10));
-                comic.setFavourite(cursor.getInt(11) == 1);
-                comics.add(comic);
+                comics.add(mapper.toSummary());
             } while (cursor.moveToNext());
+        }
+        if (cursor != null) {
             cursor.close();
         }
         return comics;
     }
 
-    public List<Comic> getFavourites() {
-        List<Comic> comics = Collections.emptyList();
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD + " WHERE " + FAV + " = 1", null);
+    public List<ComicSummary> getFavourites() {
+        List<ComicSummary> comics = Collections.emptyList();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + SUMMARY_COLUMNS + " FROM " + TABLE_XKCD + " WHERE " + FAV + " = 1", null);
         if (cursor != null && cursor.getCount() != 0 && cursor.moveToFirst()) {
-            comics = new ArrayList<>();
+            comics = new ArrayList<>(cursor.getCount());
+            ComicMapper mapper = new ComicMapper(cursor);
             do {
-                Comic comic = new Comic();
-                comic.setMonth(cursor.getString(0));
-                comic.setNum(cursor.getInt(1));
-                comic.setLink(cursor.getString(2));
-                comic.setYear(cursor.getString(3));
-                comic.setNews(cursor.getString(4));
-                comic.setSafe_title(cursor.getString(5));
-                comic.setTranscript(cursor.getString(6));
-                comic.setAlt(cursor.getString(7));
-                comic.setImg(cursor.getString(8));
-                comic.setTitle(cursor.getString(9));
-                comic.setDay(cursor.getString(10));
-                comic.setFavourite(cursor.getInt(11) == 1);
-                comics.add(comic);
+                comics.add(mapper.toSummary());
             } while (cursor.moveToNext());
             cursor.close();
         }
         return comics;
     }
 
+    /**
+     * A random number up to the newest stored comic, never one known to be unavailable, or 0 if nothing
+     * is stored.
+     */
+    public int getRandomNum() {
+        int max = getMax();
+        if (max == 0) {
+            return 0;
+        }
+        Set<Integer> unavailable = getUnavailableNums();
+        int num;
+        do {
+            num = BlipUtils.randInt(1, max);
+        } while (unavailable.contains(num) && unavailable.size() < max);
+        return num;
+    }
+
     public int getMax() {
         int max = 0;
         Cursor cursor = getReadableDatabase().rawQuery("SELECT max(" + NUM + ") FROM " + TABLE_XKCD, null);
@@ -317,17 +842,19 @@ public class DatabaseManager extends SQLiteOpenHelper {
 
     public int getCount() {
         int count = 0;
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD, null);
-        if (cursor != null && cursor.getCount() != 0) {
-            count = cursor.getCount();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT count(*) FROM " + TABLE_XKCD, null);
+        if (cursor != null && cursor.moveToFirst()) {
+            count = cursor.getInt(0);
+        }
+        if (cursor != null) {
             cursor.close();
         }
         return count;
     }
 
     public boolean dateExists(int day, int month, int year) {
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD + " WHERE " + DAY + " = ? AND " +
-                MONTH + " = ? AND " + YEAR + " = ?", new String[]{String.valueOf(day), String.valueOf(month), String.valueOf(year)});
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT 1 FROM " + TABLE_XKCD + " WHERE " + DATE + " = ? LIMIT 1",
+                new String[]{String.valueOf(dateKey(day, month, year))});
         boolean exists = false;
         if (cursor != null && cursor.getCount() != 0) {
             exists = true;
@@ -336,9 +863,25 @@ public class DatabaseManager extends SQLiteOpenHelper {
         return exists;
     }
 
+    /**
+     * Numbers of comics published on or after the given date, newest first.
+     */
+    public List<Integer> getNumsPublishedSince(int day, int month, int year) {
+        List<Integer> nums = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + NUM + " FROM " + TABLE_XKCD + " WHERE " + DATE + " >= ?" +
+                " ORDER BY " + NUM + " DESC", new String[]{String.valueOf(dateKey(day, month, year))});
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                nums.add(cursor.getInt(0));
+            }
+            cursor.close();
+        }
+        return nums;
+    }
+
     public boolean comicExists(Comic comic) {
-        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_XKCD
-                + " WHERE " + NUM + " = ?", new String[]{String.valueOf(comic.getNum())});
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT 1 FROM " + TABLE_XKCD
+                + " WHERE " + NUM + " = ? LIMIT 1", new String[]{String.valueOf(comic.getNum())});
         boolean exists = false;
         if (cursor != null && cursor.getCount() != 0) {
             exists = true;
@@ -346,4 +889,60 @@ public class DatabaseManager extends SQLiteOpenHelper {
         }
         return exists;
     }
+
+    /**
+     * Reads comics from a cursor by column name. Indexes are resolved once per cursor, and columns
+     * missing from the projection are left unset, so the same mapper serves full and summary queries.
+     */
+    static class ComicMapper {
+
+        private final Cursor cursor;
+        private final int num, title, alt, img, date, fav;
+        private final int month, year, day, link, news, safeTitle, transcript;
+
+        ComicMapper(Cursor cursor) {
+            this.cursor = cursor;
+            num = cursor.getColumnIndex(NUM);
+            title = cursor.getColumnIndex(TITLE);
+            alt = cursor.getColumnIndex(ALT);
+            img = cursor.getColumnIndex(IMG);
+            date = cursor.getColumnIndex(DATE);
+            fav = cursor.getColumnIndex(FAV);
+            month = cursor.getColumnIndex(MONTH);
+            year = cursor.getColumnIndex(YEAR);
+            day = cursor.getColumnIndex(DAY);
+            link = cursor.getColumnIndex(LINK);
+            news = cursor.getColumnIndex(NEWS);
+            safeTitle = cursor.getColumnIndex(SAFE_TITLE);
+            transcript = cursor.getColumnIndex(TRANSCRIPT);
+        }
+
+        ComicSummary toSummary() {
+            ComicSummary comic = new ComicSummary();
+            if (num != -1) comic.setNum(cursor.getInt(num));
+            if (title != -1) comic.setTitle(cursor.getString(title));
+            if (alt != -1) comic.setAlt(cursor.getString(alt));
+            if (img != -1) comic.setImg(cursor.getString(img));
+            if (date != -1) comic.setDate(cursor.getInt(date));
+            if (fav != -1) comic.setFavourite(cursor.getInt(fav) == 1);
+            return comic;
+        }
+
+        Comic toComic() {
+            Comic comic = new Comic();
+            if (num != -1) comic.setNum(cursor.getInt(num));
+            if (title != -1) comic.setTitle(cursor.getString(title));
+            if (alt != -1) comic.setAlt(cursor.getString(alt));
+            if (img != -1) comic.setImg(cursor.getString(img));
+            if (fav != -1) comic.setFavourite(cursor.getInt(fav) == 1);
+            if (month != -1) comic.setMonth(cursor.getString(month));
+            if (year != -1) comic.setYear(cursor.getString(year));
+            if (day != -1) comic.setDay(cursor.getString(day));
+            if (link != -1) comic.setLink(cursor.getString(link));
+            if (news != -1) comic.setNews(cursor.getString(news));
+            if (safeTitle != -1) comic.setSafe_title(cursor.getString(safeTitle));
+            if (transcript != -1) comic.setTranscript(cursor.getString(transcript));
+            return comic;
+        }
+    }
 }
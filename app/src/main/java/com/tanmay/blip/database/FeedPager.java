@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.database;
+
+import android.util.SparseArray;
+
+import com.tanmay.blip.models.ComicSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pages the feed out of the database by comic number and keeps only a few pages around the
+ * viewport in memory.
+ * <p/>
+ * The pager holds the full list of comic numbers, which is small, so every position has a number.
+ * Rows are loaded a page at a time with a keyset query, kept by comic number and handed out through
+ * {@link #get(int)}, which returns null for rows that are still loading. When rows from more than
+ * {@code maxPages} pages are held, the page farthest from the last requested one is dropped and
+ * will be loaded again if the user scrolls back to it. Comics stored later are merged in with
+ * {@link #insert(Set)}; rows already held stay held, wherever they move to. Use from the main
+ * thread only.
+ */
+public class FeedPager {
+
+    private static final int PREFETCH_DISTANCE = 5;
+
+    public interface Listener {
+        void onReset();
+
+        void onRangeLoaded(int start, int count);
+
+        void onRangeInserted(int start, int count);
+
+        void onItemChanged(int position);
+    }
+
+    private final QueryRunner queries;
+    private final int pageSize;
+    private final int maxPages;
+    private final Listener listener;
+
+    private int[] nums = new int[0];
+    private final SparseArray<ComicSummary> rows = new SparseArray<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private int lastRequestedPage;
+    private int version;
+    private boolean loadingNums;
+
+    public FeedPager(QueryRunner queries, int pageSize, int maxPages, Listener listener) {
+        this.queries = queries;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.listener = listener;
+    }
+
+    /**
+     * Reloads the list of comic numbers and drops every cached row.
+     */
+    public void load() {
+        final int loadVersion = ++version;
+        loadingNums = true;
+        queries.run("feed_nums", new QueryRunner.Query<int[]>() {
+            @Override
+            public int[] run(DatabaseManager databaseManager) {
+                return databaseManager.getFeedNums();
+            }
+        }, new QueryRunner.Callback<int[]>() {
+            @Override
+            public void onResult(int[] result) {
+                if (loadVersion != version) {
+                    return;
+                }
+                loadingNums = false;
+                nums = result;
+                rows.clear();
+                loadingPages.clear();
+                listener.onReset();
+            }
+        });
+    }
+
+    public int size() {
+        return nums.length;
+    }
+
+    public ComicSummary get(int position) {
+        int page = position / pageSize;
+        lastRequestedPage = page;
+        int offset = position % pageSize;
+        if (offset >= pageSize - PREFETCH_DISTANCE) {
+            ensurePage(page + 1);
+        } else if (offset < PREFETCH_DISTANCE) {
+            ensurePage(page - 1);
+        }
+
+        ComicSummary comic = rows.get(nums[position]);
+        if (comic == null) {
+            ensurePage(page);
+        }
+        return comic;
+    }
+
+    /**
+     * Merges changed comics that are not listed yet into the numbers and reports each run of new
+     * positions to the listener. Their rows load like any other when they are first requested.
+     */
+    public void insert(Set<Integer> changed) {
+        if (loadingNums) {
+            // The numbers being loaded may predate these comics, and nothing is shown yet
+            load();
+            return;
+        }
+        List<Integer> added = new ArrayList<>();
+        for (int num : changed) {
+            if (positionOf(num) < 0) {
+                added.add(num);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        Collections.sort(added, Collections.reverseOrder());
+
+        // Both lists are newest first
+        int[] merged = new int[nums.length + added.size()];
+        for (int i = 0, j = 0, k = 0; k < merged.length; k++) {
+            if (j < added.size() && (i >= nums.length || added.get(j) > nums[i])) {
+                merged[k] = added.get(j++);
+            } else {
+                merged[k] = nums[i++];
+            }
+        }
+        nums = merged;
+
+        // Newest first means ascending positions, so each range is reported where it finally sits
+        int start = positionOf(added.get(0));
+        int count = 1;
+        for (int i = 1; i < added.size(); i++) {
+            int position = positionOf(added.get(i));
+            if (position == start + count) {
+                count++;
+            } else {
+                listener.onRangeInserted(start, count);
+                start = position;
+                count = 1;
+            }
+        }
+        listener.onRangeInserted(start, count);
+    }
+
+    /**
+     * @return the changed comics that are currently held in memory
+     */
+    public Set<Integer> loadedOf(Set<Integer> changed) {
+        Set<Integer> loaded = new HashSet<>();
+        for (int num : changed) {
+            if (rows.get(num) != null) {
+                loaded.add(num);
+            }
+        }
+        return loaded;
+    }
+
+    public void applyChanges(Map<Integer, ComicSummary> changed) {
+        for (ComicSummary comic : changed.values()) {
+            int position = positionOf(comic.getNum());
+            if (position >= 0 && rows.get(comic.getNum()) != null) {
+                rows.put(comic.getNum(), comic);
+                listener.onItemChanged(position);
+            }
+        }
+    }
+
+    int positionOf(int num) {
+        // Binary search over nums, which is sorted newest first
+        int low = 0;
+        int high = nums.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (nums[mid] > num) {
+                low = mid + 1;
+            } else if (nums[mid] < num) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLoaded(int page) {
+        for (int position = page * pageSize; position < Math.min(nums.length, (page + 1) * pageSize); position++) {
+            if (rows.get(nums[position]) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensurePage(final int page) {
+        if (page < 0 || page * pageSize >= nums.length || loadingPages.contains(page) || isLoaded(page)) {
+            return;
+        }
+        loadingPages.add(page);
+        final int loadVersion = version;
+        final int beforeNum = page == 0 ? Integer.MAX_VALUE : nums[page * pageSize - 1];
+        queries.run(new QueryRunner.Query<List<ComicSummary>>() {
+            @Override
+            public List<ComicSummary> run(DatabaseManager databaseManager) {
+                return databaseManager.getFeedPage(beforeNum, pageSize);
+            }
+        }, new QueryRunner.Callback<List<ComicSummary>>() {
+            @Override
+            public void onResult(List<ComicSummary> result) {
+                if (loadVersion != version) {
+                    return;
+                }
+                loadingPages.remove(page);
+                if (result.isEmpty()) {
+                    return;
+                }
+                for (ComicSummary comic : result) {
+                    rows.put(comic.getNum(), comic);
+                }
+                evictFarPages();
+                // Comics inserted while the page loaded may have moved it, so report where its rows are now
+                int first = positionOf(result.get(0).getNum());
+                int last = positionOf(result.get(result.size() - 1).getNum());
+                if (first >= 0 && last >= first) {
+                    listener.onRangeLoaded(first, last - first + 1);
+                }
+            }
+        });
+    }
+
+    private void evictFarPages() {
+        SparseArray<List<Integer>> held = new SparseArray<>();
+        for (int i = 0; i < rows.size(); i++) {
+            int num = rows.keyAt(i);
+            int position = positionOf(num);
+            int page = position < 0 ? -1 : position / pageSize;
+            List<Integer> pageNums = held.get(page);
+            if (pageNums == null) {
+                pageNums = new ArrayList<>();
+                held.put(page, pageNums);
+            }
+            pageNums.add(num);
+        }
+        while (held.size() > maxPages) {
+            int farthest = held.keyAt(0);
+            for (int i = 1; i < held.size(); i++) {
+                int page = held.keyAt(i);
+                if (Math.abs(page - lastRequestedPage) > Math.abs(farthest - lastRequestedPage)) {
+                    farthest = page;
+                }
+            }
+            for (int num : held.get(farthest)) {
+                rows.remove(num);
+            }
+            held.remove(farthest);
+        }
+    }
+}
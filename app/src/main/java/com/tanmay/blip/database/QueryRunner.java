@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs {@link DatabaseManager} work off the main thread and hands results back on it.
+ * <p/>
+ * Each screen owns one runner. Queries submitted under the same key replace each other, so only the
+ * result of the newest one is delivered, and {@link #cancelAll()} drops everything still pending when
+ * the screen goes away. Create and use a runner from the main thread only.
+ */
+public class QueryRunner {
+
+    // A single thread runs work in submission order, so a query never misses a write submitted before it
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "DatabaseQuery");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Integer> generations = new HashMap<>();
+    private final List<Future<?>> pending = new LinkedList<>();
+    private final List<DatabaseManager.OnComicsChangedListener> observers = new LinkedList<>();
+    private boolean cancelled;
+
+    public interface Query<T> {
+        T run(DatabaseManager databaseManager);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Runs a query in the background. The callback runs on the main thread, unless this runner was
+     * cancelled or a newer query was submitted under the same key in the meantime.
+     */
+    public <T> Future<T> run(final String key, final Query<T> query, final Callback<T> callback) {
+        Integer previous = generations.get(key);
+        final int generation = previous == null ? 1 : previous + 1;
+        generations.put(key, generation);
+        return submit(key, generation, query, callback);
+    }
+
+    /**
+     * Runs a query that is never superseded by later ones, for incremental updates that must all be
+     * applied in order.
+     */
+    public <T> Future<T> run(Query<T> query, Callback<T> callback) {
+        return submit(null, 0, query, callback);
+    }
+
+    private <T> Future<T> submit(final String key, final int generation, final Query<T> query, final Callback<T> callback) {
+        prunePending();
+
+        Future<T> future = EXECUTOR.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                final T result;
+                try {
+                    result = query.run(DatabaseManager.getInstance());
+                } catch (final RuntimeException e) {
+                    // Surface failures the same way a query on the main thread would have
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw e;
+                        }
+                    });
+                    throw e;
+                }
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled && (key == null || generations.get(key) == generation) && callback != null) {
+                            callback.onResult(result);
+                        }
+                    }
+                });
+                return result;
+            }
+        });
+        pending.add(future);
+        return future;
+    }
+
+    /**
+     * Runs a write in the background. Writes are never superseded or cancelled, so a change the user
+     * made is stored even if the screen closes right after.
+     */
+    public Future<?> execute(Runnable write) {
+        return EXECUTOR.submit(write);
+    }
+
+    /**
+     * Delivers the numbers of comics written anywhere in the app on the main thread, until
+     * {@link #cancelAll()} is called.
+     */
+    public void observe(final Callback<Set<Integer>> callback) {
+        observe(new DatabaseManager.OnComicsChangedListener() {
+            @Override
+            public void onComicsChanged(Set<Integer> nums, boolean favourites) {
+                callback.onResult(nums);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #observe(Callback)}, for screens that also need to know whether the favourite flag
+     * changed. The listener is called on the main thread.
+     */
+    public void observe(final DatabaseManager.OnComicsChangedListener observer) {
+        DatabaseManager.OnComicsChangedListener listener = new DatabaseManager.OnComicsChangedListener() {
+            @Override
+            public void onComicsChanged(final Set<Integer> nums, final boolean favourites) {
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled) {
+                            observer.onComicsChanged(nums, favourites);
+                        }
+                    }
+                });
+            }
+        };
+        observers.add(listener);
+        DatabaseManager.getInstance().registerListener(listener);
+    }
+
+    public void cancelAll() {
+        cancelled = true;
+        for (DatabaseManager.OnComicsChangedListener listener : observers) {
+            DatabaseManager.getInstance().unregisterListener(listener);
+        }
+        observers.clear();
+        for (Future<?> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    private void prunePending() {
+        Iterator<Future<?>> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+}
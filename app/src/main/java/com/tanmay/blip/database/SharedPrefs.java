@@ -62,4 +62,15 @@ public class SharedPrefs {
         sharedPreferences.edit().putLong("TRANSCRIPT_TIME", time).apply();
     }
 
+    /**
+     * Every comic up to this number has been stored by a full download, so later runs only look for gaps above it.
+     */
+    public int getArchiveCheckpoint() {
+        return sharedPreferences.getInt("ARCHIVE_CHECKPOINT", 0);
+    }
+
+    public void setArchiveCheckpoint(int num) {
+        sharedPreferences.edit().putInt("ARCHIVE_CHECKPOINT", num).apply();
+    }
+
 }
@@ -45,21 +45,28 @@ import com.tanmay.blip.activities.AboutActivity;
 import com.tanmay.blip.activities.ImageActivity;
 import com.tanmay.blip.activities.SearchActivity;
 import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.QueryRunner;
 import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
 import com.tanmay.blip.utils.BlipUtils;
 import com.tanmay.blip.utils.SpeechSynthesizer;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class FavouritesFragment extends Fragment {
 
     private RecyclerView recyclerView;
     private View noFavs;
-    private DatabaseManager databaseManager;
     private FavouritesListAdapter adapter;
+    private QueryRunner queries;
 
     @Nullable
     @Override
@@ -67,6 +74,31 @@ public class FavouritesFragment extends Fragment {
         View rootView = inflater.inflate(R.layout.fragment_favourite, container, false);
 
         setHasOptionsMenu(true);
+        queries = new QueryRunner();
+        queries.observe(new DatabaseManager.OnComicsChangedListener() {
+            @Override
+            public void onComicsChanged(Set<Integer> nums, boolean favourites) {
+                if (adapter == null) {
+                    return;
+                }
+                // Only a favourite toggle can add a comic here, any other write only matters to listed ones
+                final Set<Integer> relevant = favourites ? nums : adapter.listedOf(nums);
+                if (relevant.isEmpty()) {
+                    return;
+                }
+                queries.run(new QueryRunner.Query<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public Map<Integer, ComicSummary> run(DatabaseManager databaseManager) {
+                        return databaseManager.getComicSummaries(relevant);
+                    }
+                }, new QueryRunner.Callback<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public void onResult(Map<Integer, ComicSummary> result) {
+                        adapter.applyChanges(result);
+                    }
+                });
+            }
+        });
 
         recyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview);
         StaggeredGridLayoutManager layoutManager;
@@ -85,22 +117,23 @@ public class FavouritesFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        if (databaseManager == null) {
-            databaseManager = new DatabaseManager(getActivity());
-        }
-
         if (recyclerView.getAdapter() == null) {
             adapter = new FavouritesListAdapter();
             recyclerView.setAdapter(adapter);
             noFavs.setVisibility(View.GONE);
-        } else {
-            adapter.notifyDataSetChanged();
         }
+        adapter.updateList();
+    }
 
-        if (recyclerView.getAdapter().getItemCount() == 0) {
-            recyclerView.setVisibility(View.GONE);
-            noFavs.setVisibility(View.VISIBLE);
-        }
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        queries.cancelAll();
+    }
+
+    private void showEmptyState(boolean empty) {
+        recyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        noFavs.setVisibility(empty ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -123,11 +156,10 @@ public class FavouritesFragment extends Fragment {
 
     public class FavouritesListAdapter extends RecyclerView.Adapter<FavouritesListAdapter.ViewHolder> {
 
-        private List<Comic> comics;
+        private List<ComicSummary> comics = new ArrayList<>();
         private SimpleDateFormat simpleDateFormat;
 
         public FavouritesListAdapter() {
-            updateList();
             simpleDateFormat = new SimpleDateFormat("MMMM dd, yyyy (EEEE)", Locale.getDefault());
             OkHttpClient picassoClient = BlipApplication.getInstance().client.clone();
             picassoClient.interceptors().add(BlipUtils.REWRITE_CACHE_CONTROL_INTERCEPTOR);
@@ -135,13 +167,65 @@ public class FavouritesFragment extends Fragment {
         }
 
         public void updateList() {
-            comics = databaseManager.getFavourites();
-            if (getItemCount() == 0) {
-                recyclerView.setVisibility(View.GONE);
-                noFavs.setVisibility(View.VISIBLE);
-            } else {
-                notifyDataSetChanged();
+            queries.run("favourites", new QueryRunner.Query<List<ComicSummary>>() {
+                @Override
+                public List<ComicSummary> run(DatabaseManager databaseManager) {
+                    return databaseManager.getFavourites();
+                }
+            }, new QueryRunner.Callback<List<ComicSummary>>() {
+                @Override
+                public void onResult(List<ComicSummary> result) {
+                    comics = new ArrayList<>(result);
+                    notifyDataSetChanged();
+                    showEmptyState(comics.isEmpty());
+                }
+            });
+        }
+
+        /**
+         * @return the changed comics that are currently listed
+         */
+        public Set<Integer> listedOf(Set<Integer> changed) {
+            Set<Integer> listed = new HashSet<>();
+            for (ComicSummary comic : comics) {
+                if (changed.contains(comic.getNum())) {
+                    listed.add(comic.getNum());
+                }
             }
+            return listed;
+        }
+
+        /**
+         * Drops comics that are no longer favourites, refreshes the ones still listed and inserts
+         * new favourites in number order.
+         */
+        public void applyChanges(Map<Integer, ComicSummary> changed) {
+            Map<Integer, ComicSummary> remaining = new HashMap<>(changed);
+            for (int i = comics.size() - 1; i >= 0; i--) {
+                ComicSummary updated = remaining.remove(comics.get(i).getNum());
+                if (updated == null) {
+                    continue;
+                }
+                if (updated.isFavourite()) {
+                    comics.set(i, updated);
+                    notifyItemChanged(i);
+                } else {
+                    comics.remove(i);
+                    notifyItemRemoved(i);
+                }
+            }
+            for (ComicSummary comic : remaining.values()) {
+                if (!comic.isFavourite()) {
+                    continue;
+                }
+                int position = 0;
+                while (position < comics.size() && comics.get(position).getNum() < comic.getNum()) {
+                    position++;
+                }
+                comics.add(position, comic);
+                notifyItemInserted(position);
+            }
+            showEmptyState(comics.isEmpty());
         }
 
         @Override
@@ -152,14 +236,14 @@ public class FavouritesFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(ViewHolder holder, int position) {
-            Comic comic = comics.get(position);
+            ComicSummary comic = comics.get(position);
 
             holder.title.setText(comic.getNum() + ". " + comic.getTitle());
 
             Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.YEAR, Integer.parseInt(comic.getYear()));
-            calendar.set(Calendar.MONTH, Integer.parseInt(comic.getMonth()) - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(comic.getDay()));
+            calendar.set(Calendar.YEAR, comic.getYear());
+            calendar.set(Calendar.MONTH, comic.getMonth() - 1);
+            calendar.set(Calendar.DAY_OF_MONTH, comic.getDay());
             holder.date.setText(simpleDateFormat.format(calendar.getTime()));
 
             holder.alt.setText(comic.getAlt());
@@ -217,46 +301,63 @@ public class FavouritesFragment extends Fragment {
                         startActivity(intent);
                         break;
                     case R.id.transcript:
-                        String content = comics.get(position).getTranscript();
-                        if (content.equals("")) {
-                            content = getResources().getString(R.string.message_no_transcript);
-                        }
-                        final String speakingContent = content;
-                        new MaterialDialog.Builder(getActivity())
-                                .title(R.string.title_dialog_transcript)
-                                .content(content)
-                                .negativeText(R.string.negative_text_dialog)
-                                .neutralText(R.string.neutral_text_dialog_speak)
-                                .autoDismiss(false)
-                                .callback(new MaterialDialog.ButtonCallback() {
-                                    @Override
-                                    public void onNegative(MaterialDialog dialog) {
-                                        super.onNegative(dialog);
-                                        dialog.dismiss();
-                                    }
-
-                                    @Override
-                                    public void onNeutral(MaterialDialog dialog) {
-                                        super.onNeutral(dialog);
-                                        SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
-                                    }
-                                })
-                                .dismissListener(new DialogInterface.OnDismissListener() {
-                                    @Override
-                                    public void onDismiss(DialogInterface dialog) {
-                                        SpeechSynthesizer.getInstance().stopSpeaking();
-                                    }
-                                })
-                                .show();
+                        final int transcriptNum = comics.get(position).getNum();
+                        queries.run("transcript", new QueryRunner.Query<Comic>() {
+                            @Override
+                            public Comic run(DatabaseManager databaseManager) {
+                                return databaseManager.getComic(transcriptNum);
+                            }
+                        }, new QueryRunner.Callback<Comic>() {
+                            @Override
+                            public void onResult(Comic comic) {
+                                String content = comic.getTranscript();
+                                if (content == null || content.isEmpty()) {
+                                    content = getResources().getString(R.string.message_no_transcript);
+                                }
+                                final String speakingContent = content;
+                                new MaterialDialog.Builder(getActivity())
+                                        .title(R.string.title_dialog_transcript)
+                                        .content(content)
+                                        .negativeText(R.string.negative_text_dialog)
+                                        .neutralText(R.string.neutral_text_dialog_speak)
+                                        .autoDismiss(false)
+                                        .callback(new MaterialDialog.ButtonCallback() {
+                                            @Override
+                                            public void onNegative(MaterialDialog dialog) {
+                                                super.onNegative(dialog);
+                                                dialog.dismiss();
+                                            }
+
+                                            @Override
+                                            public void onNeutral(MaterialDialog dialog) {
+                                                super.onNeutral(dialog);
+                                                SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
+                                            }
+                                        })
+                                        .dismissListener(new DialogInterface.OnDismissListener() {
+                                            @Override
+                                            public void onDismiss(DialogInterface dialog) {
+                                                SpeechSynthesizer.getInstance().stopSpeaking();
+                                            }
+                                        })
+                                        .show();
+                            }
+                        });
                         break;
                     case R.id.img_container:
                         ImageActivity.launch((AppCompatActivity) getActivity(), img, comics.get(position).getNum());
                         break;
                     case R.id.favourite:
-                        boolean fav = comics.get(position).isFavourite();
-                        comics.get(position).setFavourite(!fav);
-                        databaseManager.setFavourite(comics.get(position).getNum(), !fav);
-                        updateList();
+                        final int favNum = comics.get(position).getNum();
+                        queries.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                DatabaseManager.getInstance().setFavourite(favNum, false);
+                            }
+                        });
+                        comics.remove(position);
+                        notifyItemRemoved(position);
+                        showEmptyState(comics.isEmpty());
                         break;
                     case R.id.help:
                         Intent explainIntent = new Intent(Intent.ACTION_VIEW,
@@ -45,21 +45,27 @@ import com.tanmay.blip.activities.AboutActivity;
 import com.tanmay.blip.activities.ImageActivity;
 import com.tanmay.blip.activities.SearchActivity;
 import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.FeedPager;
+import com.tanmay.blip.database.QueryRunner;
 import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.ComicSummary;
 import com.tanmay.blip.utils.BlipUtils;
 import com.tanmay.blip.utils.SpeechSynthesizer;
-import com.tanmay.blip.views.EndlessRecyclerOnScrollListener;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class FeedFragment extends Fragment {
 
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 5;
+
     private RecyclerView recyclerView;
     private FeedListAdapter adapter;
-    private DatabaseManager databaseManager;
+    private QueryRunner queries;
 
     @Nullable
     @Override
@@ -67,6 +73,31 @@ public class FeedFragment extends Fragment {
         View rootView = inflater.inflate(R.layout.fragment_feed, container, false);
 
         setHasOptionsMenu(true);
+        queries = new QueryRunner();
+        queries.observe(new QueryRunner.Callback<Set<Integer>>() {
+            @Override
+            public void onResult(Set<Integer> nums) {
+                if (adapter == null) {
+                    return;
+                }
+                adapter.pager.insert(nums);
+                final Set<Integer> loaded = adapter.pager.loadedOf(nums);
+                if (loaded.isEmpty()) {
+                    return;
+                }
+                queries.run(new QueryRunner.Query<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public Map<Integer, ComicSummary> run(DatabaseManager databaseManager) {
+                        return databaseManager.getComicSummaries(loaded);
+                    }
+                }, new QueryRunner.Callback<Map<Integer, ComicSummary>>() {
+                    @Override
+                    public void onResult(Map<Integer, ComicSummary> result) {
+                        adapter.pager.applyChanges(result);
+                    }
+                });
+            }
+        });
 
         recyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview);
         StaggeredGridLayoutManager layoutManager;
@@ -77,14 +108,6 @@ public class FeedFragment extends Fragment {
         }
         recyclerView.setLayoutManager(layoutManager);
         recyclerView.setItemAnimator(new DefaultItemAnimator());
-        recyclerView.addOnScrollListener(new EndlessRecyclerOnScrollListener(layoutManager) {
-            @Override
-            public void onLoadMore(int current_page) {
-                if (adapter != null && databaseManager != null) {
-                    adapter.addComics(databaseManager.getFeed(adapter.getLastItemNum()));
-                }
-            }
-        });
 
         return rootView;
     }
@@ -92,17 +115,19 @@ public class FeedFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        if (databaseManager == null) {
-            databaseManager = new DatabaseManager(getActivity());
-        }
-
         if (recyclerView.getAdapter() == null) {
             adapter = new FeedListAdapter();
-            adapter.addComics(databaseManager.getFeed());
             recyclerView.setAdapter(adapter);
+            adapter.pager.load();
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        queries.cancelAll();
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -123,7 +148,7 @@ public class FeedFragment extends Fragment {
 
     public class FeedListAdapter extends RecyclerView.Adapter<FeedListAdapter.ViewHolder> {
 
-        private List<Comic> comics;
+        private final FeedPager pager;
         private SimpleDateFormat simpleDateFormat;
 
         public FeedListAdapter() {
@@ -131,18 +156,27 @@ public class FeedFragment extends Fragment {
             OkHttpClient picassoClient = BlipApplication.getInstance().client.clone();
             picassoClient.interceptors().add(BlipUtils.REWRITE_CACHE_CONTROL_INTERCEPTOR);
             new Picasso.Builder(getActivity()).downloader(new OkHttpDownloader(picassoClient)).build();
-        }
+            pager = new FeedPager(queries, PAGE_SIZE, MAX_PAGES, new FeedPager.Listener() {
+                @Override
+                public void onReset() {
+                    notifyDataSetChanged();
+                }
 
-        public void addComics(List<Comic> comics) {
-            if (this.comics == null) {
-                this.comics = comics;
-            } else {
-                this.comics.addAll(comics);
-            }
-        }
+                @Override
+                public void onRangeLoaded(int start, int count) {
+                    notifyItemRangeChanged(start, count);
+                }
 
-        public int getLastItemNum() {
-            return comics.get(comics.size() - 1).getNum();
+                @Override
+                public void onRangeInserted(int start, int count) {
+                    notifyItemRangeInserted(start, count);
+                }
+
+                @Override
+                public void onItemChanged(int position) {
+                    notifyItemChanged(position);
+                }
+            });
         }
 
         @Override
@@ -153,14 +187,24 @@ public class FeedFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(ViewHolder holder, int position) {
-            Comic comic = comics.get(position);
+            ComicSummary comic = pager.get(position);
+            if (comic == null) {
+                // Still loading, show an empty card until its page arrives
+                holder.title.setText("");
+                holder.date.setText("");
+                holder.alt.setText("");
+                Picasso.with(holder.img.getContext()).cancelRequest(holder.img);
+                holder.img.setImageDrawable(null);
+                holder.favourite.setColorFilter(getResources().getColor(R.color.icons_dark));
+                return;
+            }
 
             holder.title.setText(comic.getNum() + ". " + comic.getTitle());
 
             Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.YEAR, Integer.parseInt(comic.getYear()));
-            calendar.set(Calendar.MONTH, Integer.parseInt(comic.getMonth()) - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(comic.getDay()));
+            calendar.set(Calendar.YEAR, comic.getYear());
+            calendar.set(Calendar.MONTH, comic.getMonth() - 1);
+            calendar.set(Calendar.DAY_OF_MONTH, comic.getDay());
             holder.date.setText(simpleDateFormat.format(calendar.getTime()));
 
             holder.alt.setText(comic.getAlt());
@@ -179,7 +223,7 @@ public class FeedFragment extends Fragment {
 
         @Override
         public int getItemCount() {
-            return comics.size();
+            return pager.size();
         }
 
         public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -212,51 +256,73 @@ public class FeedFragment extends Fragment {
             @Override
             public void onClick(View v) {
                 final int position = getAdapterPosition();
+                final ComicSummary comic = position == RecyclerView.NO_POSITION ? null : pager.get(position);
+                if (comic == null) {
+                    return;
+                }
                 switch (v.getId()) {
                     case R.id.open_in_browser:
-                        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("http://xkcd.com/" + comics.get(position).getNum()));
+                        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("http://xkcd.com/" + comic.getNum()));
                         startActivity(intent);
                         break;
                     case R.id.transcript:
-                        String content = comics.get(position).getTranscript();
-                        if (content.equals("")) {
-                            content = getResources().getString(R.string.message_no_transcript);
-                        }
-                        final String speakingContent = content;
-                        new MaterialDialog.Builder(getActivity())
-                                .title(R.string.title_dialog_transcript)
-                                .content(content)
-                                .negativeText(R.string.negative_text_dialog)
-                                .neutralText(R.string.neutral_text_dialog_speak)
-                                .autoDismiss(false)
-                                .callback(new MaterialDialog.ButtonCallback() {
-                                    @Override
-                                    public void onNegative(MaterialDialog dialog) {
-                                        super.onNegative(dialog);
-                                        dialog.dismiss();
-                                    }
-
-                                    @Override
-                                    public void onNeutral(MaterialDialog dialog) {
-                                        super.onNeutral(dialog);
-                                        SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
-                                    }
-                                })
-                                .dismissListener(new DialogInterface.OnDismissListener() {
-                                    @Override
-                                    public void onDismiss(DialogInterface dialog) {
-                                        SpeechSynthesizer.getInstance().stopSpeaking();
-                                    }
-                                })
-                                .show();
+                        final int transcriptNum = comic.getNum();
+                        queries.run("transcript", new QueryRunner.Query<Comic>() {
+                            @Override
+                            public Comic run(DatabaseManager databaseManager) {
+                                return databaseManager.getComic(transcriptNum);
+                            }
+                        }, new QueryRunner.Callback<Comic>() {
+                            @Override
+                            public void onResult(Comic comic) {
+                                String content = comic.getTranscript();
+                                if (content == null || content.isEmpty()) {
+                                    content = getResources().getString(R.string.message_no_transcript);
+                                }
+                                final String speakingContent = content;
+                                new MaterialDialog.Builder(getActivity())
+                                        .title(R.string.title_dialog_transcript)
+                                        .content(content)
+                                        .negativeText(R.string.negative_text_dialog)
+                                        .neutralText(R.string.neutral_text_dialog_speak)
+                                        .autoDismiss(false)
+                                        .callback(new MaterialDialog.ButtonCallback() {
+                                            @Override
+                                            public void onNegative(MaterialDialog dialog) {
+                                                super.onNegative(dialog);
+                                                dialog.dismiss();
+                                            }
+
+                                            @Override
+                                            public void onNeutral(MaterialDialog dialog) {
+                                                super.onNeutral(dialog);
+                                                SpeechSynthesizer.getInstance().convertToSpeechFlush(speakingContent);
+                                            }
+                                        })
+                                        .dismissListener(new DialogInterface.OnDismissListener() {
+                                            @Override
+                                            public void onDismiss(DialogInterface dialog) {
+                                                SpeechSynthesizer.getInstance().stopSpeaking();
+                                            }
+                                        })
+                                        .show();
+                            }
+                        });
                         break;
                     case R.id.img_container:
-                        ImageActivity.launch((AppCompatActivity) getActivity(), img, comics.get(position).getNum());
+                        ImageActivity.launch((AppCompatActivity) getActivity(), img, comic.getNum());
                         break;
                     case R.id.favourite:
-                        boolean fav = comics.get(position).isFavourite();
-                        comics.get(position).setFavourite(!fav);
-                        databaseManager.setFavourite(comics.get(position).getNum(), !fav);
+                        boolean fav = comic.isFavourite();
+                        comic.setFavourite(!fav);
+                        final int favNum = comic.getNum();
+                        final boolean newFav = !fav;
+                        queries.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                DatabaseManager.getInstance().setFavourite(favNum, newFav);
+                            }
+                        });
                         if (fav) {
                             //remove from fav
                             favourite.setColorFilter(getResources().getColor(R.color.icons_dark));
@@ -267,7 +333,7 @@ public class FeedFragment extends Fragment {
                         break;
                     case R.id.help:
                         Intent explainIntent = new Intent(Intent.ACTION_VIEW,
-                                Uri.parse("http://www.explainxkcd.com/wiki/index.php/" + comics.get(position).getNum()));
+                                Uri.parse("http://www.explainxkcd.com/wiki/index.php/" + comic.getNum()));
                         startActivity(explainIntent);
                         break;
                     case R.id.share:
@@ -278,8 +344,8 @@ public class FeedFragment extends Fragment {
                         } else {
                             shareIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_WHEN_TASK_RESET);
                         }
-                        shareIntent.putExtra(Intent.EXTRA_SUBJECT, comics.get(position).getTitle());
-                        shareIntent.putExtra(Intent.EXTRA_TEXT, comics.get(position).getImg());
+                        shareIntent.putExtra(Intent.EXTRA_SUBJECT, comic.getTitle());
+                        shareIntent.putExtra(Intent.EXTRA_TEXT, comic.getImg());
                         startActivity(Intent.createChooser(shareIntent, getActivity().getResources().getString(R.string.tip_share_image_url)));
                         break;
                 }
@@ -43,6 +43,7 @@ import com.tanmay.blip.activities.AboutActivity;
 import com.tanmay.blip.activities.ImageActivity;
 import com.tanmay.blip.activities.SearchActivity;
 import com.tanmay.blip.database.DatabaseManager;
+import com.tanmay.blip.database.QueryRunner;
 import com.tanmay.blip.models.Comic;
 import com.tanmay.blip.utils.BlipUtils;
 import com.tanmay.blip.utils.SpeechSynthesizer;
@@ -50,6 +51,7 @@ import com.tanmay.blip.utils.SpeechSynthesizer;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.Set;
 
 public class RandomFragment extends Fragment implements View.OnClickListener, SwipeRefreshLayout.OnRefreshListener {
 
@@ -57,7 +59,7 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
     private ImageView img, favourite;
     private View browser, transcript, imgContainer, share, explain;
     private SwipeRefreshLayout swipeRefreshLayout;
-    private DatabaseManager databaseManager;
+    private QueryRunner queries;
     private SimpleDateFormat simpleDateFormat;
     private Comic comic;
 
@@ -87,7 +89,30 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
         share.setOnClickListener(this);
         explain.setOnClickListener(this);
 
-        databaseManager = new DatabaseManager(getActivity());
+        queries = new QueryRunner();
+        queries.observe(new QueryRunner.Callback<Set<Integer>>() {
+            @Override
+            public void onResult(Set<Integer> nums) {
+                if (comic == null || !nums.contains(comic.getNum())) {
+                    return;
+                }
+                final int num = comic.getNum();
+                queries.run(new QueryRunner.Query<Comic>() {
+                    @Override
+                    public Comic run(DatabaseManager databaseManager) {
+                        return databaseManager.getComic(num);
+                    }
+                }, new QueryRunner.Callback<Comic>() {
+                    @Override
+                    public void onResult(Comic result) {
+                        // Only refresh if the user has not moved on to another comic meanwhile
+                        if (result != null && comic != null && comic.getNum() == result.getNum()) {
+                            showComic(result);
+                        }
+                    }
+                });
+            }
+        });
         simpleDateFormat = new SimpleDateFormat("MMMM dd, yyyy (EEEE)", Locale.getDefault());
 
         OkHttpClient picassoClient = BlipApplication.getInstance().client.clone();
@@ -105,15 +130,32 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
         return rootView;
     }
 
-    private void loadComic(int num) {
-        int random;
-        if (num == 0) {
-            random = BlipUtils.randInt(1, databaseManager.getMax());
-        } else {
-            random = num;
-        }
-        comic = databaseManager.getComic(random);
+    private void loadComic(final int num) {
+        queries.run("comic", new QueryRunner.Query<Comic>() {
+            @Override
+            public Comic run(DatabaseManager databaseManager) {
+                int random;
+                if (num == 0) {
+                    random = databaseManager.getRandomNum();
+                } else {
+                    random = num;
+                }
+                return databaseManager.getComic(random);
+            }
+        }, new QueryRunner.Callback<Comic>() {
+            @Override
+            public void onResult(Comic result) {
+                if (result != null) {
+                    showComic(result);
+                } else {
+                    swipeRefreshLayout.setRefreshing(false);
+                }
+            }
+        });
+    }
 
+    private void showComic(Comic comic) {
+        this.comic = comic;
         title.setText(comic.getNum() + ". " + comic.getTitle());
         Calendar calendar = Calendar.getInstance();
         calendar.set(Calendar.YEAR, Integer.parseInt(comic.getYear()));
@@ -137,7 +179,15 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putInt("NUM", comic.getNum());
+        if (comic != null) {
+            outState.putInt("NUM", comic.getNum());
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        queries.cancelAll();
     }
 
     @Override
@@ -162,6 +212,9 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
 
     @Override
     public void onClick(View v) {
+        if (comic == null) {
+            return;
+        }
         switch (v.getId()) {
             case R.id.open_in_browser:
                 Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("http://xkcd.com/" + comic.getNum()));
@@ -169,7 +222,7 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
                 break;
             case R.id.transcript:
                 String content = comic.getTranscript();
-                if (content.equals("")) {
+                if (content == null || content.isEmpty()) {
                     content = getResources().getString(R.string.message_no_transcript);
                 }
                 final String speakingContent = content;
@@ -206,7 +259,14 @@ public class RandomFragment extends Fragment implements View.OnClickListener, Sw
             case R.id.favourite:
                 boolean fav = comic.isFavourite();
                 comic.setFavourite(!fav);
-                databaseManager.setFavourite(comic.getNum(), !fav);
+                final int favNum = comic.getNum();
+                final boolean newFav = !fav;
+                queries.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        DatabaseManager.getInstance().setFavourite(favNum, newFav);
+                    }
+                });
                 if (fav) {
                     //remove from fav
                     favourite.setColorFilter(getResources().getColor(R.color.icons_dark));
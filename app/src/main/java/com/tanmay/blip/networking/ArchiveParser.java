@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.text.Html;
+
+import com.tanmay.blip.models.Comic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the list of every comic on xkcd.com/archive, which links each one as
+ * {@code <a href="/1000/" title="2012-1-6">1000 Comics</a>}, into skeleton comics that carry only the
+ * number, title and publishing date. Anything else on the page is skipped.
+ */
+public class ArchiveParser {
+
+    private static final Pattern ENTRY =
+            Pattern.compile("<a href=\"/(\\d+)/\" title=\"(\\d{4})-(\\d{1,2})-(\\d{1,2})\">([^<]*)</a>");
+
+    private ArchiveParser() {
+    }
+
+    /**
+     * @return the comics listed on the page, in page order
+     */
+    public static List<Comic> parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<Comic> comics = new ArrayList<>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            Matcher matcher = ENTRY.matcher(line);
+            while (matcher.find()) {
+                Comic comic = new Comic();
+                comic.setNum(Integer.parseInt(matcher.group(1)));
+                // Same unpadded form as info.0.json
+                comic.setYear(String.valueOf(Integer.parseInt(matcher.group(2))));
+                comic.setMonth(String.valueOf(Integer.parseInt(matcher.group(3))));
+                comic.setDay(String.valueOf(Integer.parseInt(matcher.group(4))));
+                String title = Html.fromHtml(matcher.group(5)).toString().trim();
+                comic.setTitle(title);
+                comic.setSafe_title(title);
+                comics.add(comic);
+            }
+        }
+        return comics;
+    }
+}
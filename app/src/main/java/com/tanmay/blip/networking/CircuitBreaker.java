@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Stops every download for a while when xkcd.com keeps failing, instead of letting each worker burn
+ * through its retries against a host that is down.
+ * <p/>
+ * After {@code failureThreshold} failures in a row the circuit opens and callers of {@link #acquire()}
+ * wait until it closes again, with the pause doubling each time it reopens. Once it has opened more than
+ * {@code maxPauses} times without a success in between, the host is treated as down: callers fail right
+ * away with {@link OpenException} while it is open, which ends the batch instead of stalling it.
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long pauseMillis;
+    private final int maxPauses;
+
+    private int consecutiveFailures;
+    private int trips;
+    private long openUntil;
+
+    public static class OpenException extends IOException {
+        OpenException(String message) {
+            super(message);
+        }
+    }
+
+    public CircuitBreaker(int failureThreshold, long pauseMillis, int maxPauses) {
+        this.failureThreshold = failureThreshold;
+        this.pauseMillis = pauseMillis;
+        this.maxPauses = maxPauses;
+    }
+
+    /**
+     * Returns once a request may be made, waiting while the circuit is open.
+     */
+    public void acquire() throws IOException {
+        long wait;
+        synchronized (this) {
+            wait = openUntil - SystemClock.elapsedRealtime();
+            if (wait > 0 && trips > maxPauses) {
+                throw new OpenException("xkcd.com failed " + trips + " rounds in a row");
+            }
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trips = 0;
+    }
+
+    public synchronized void onFailure() {
+        long now = SystemClock.elapsedRealtime();
+        // Failures of requests that were already in flight when the circuit opened do not open it again
+        if (now < openUntil) {
+            return;
+        }
+        if (++consecutiveFailures >= failureThreshold) {
+            consecutiveFailures = 0;
+            openUntil = now + (pauseMillis << Math.min(trips, 10));
+            trips++;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return SystemClock.elapsedRealtime() < openUntil;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import com.squareup.okhttp.ResponseBody;
+import com.tanmay.blip.models.Comic;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes {@link Comic} as served in xkcd's info.0.json without reflection.
+ * <p/>
+ * It keeps no state, so the single {@link #INSTANCE} is shared by every download thread. Keys it does
+ * not know, such as {@code extra_parts}, are skipped.
+ */
+public class ComicTypeAdapter extends TypeAdapter<Comic> {
+
+    public static final ComicTypeAdapter INSTANCE = new ComicTypeAdapter();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ComicTypeAdapter() {
+    }
+
+    /**
+     * Parses a comic while the body is still streaming in, without copying it into a String first.
+     * Malformed JSON, an empty body and a comic without a number are reported as
+     * {@link JsonSyntaxException}, like {@code Gson.fromJson} does, so they are not mistaken for a
+     * network error.
+     */
+    public Comic fromBody(ResponseBody body) throws IOException {
+        return parse(body.charStream());
+    }
+
+    /**
+     * Like {@link #fromBody(ResponseBody)}, and also rejects a comic that is not the one requested.
+     */
+    public Comic fromBody(ResponseBody body, int num) throws IOException {
+        return requireNum(fromBody(body), num);
+    }
+
+    /**
+     * Parses a body that was already read in full, as handed from the network stage to the parsers.
+     */
+    public Comic fromBytes(byte[] body) throws IOException {
+        return parse(new InputStreamReader(new ByteArrayInputStream(body), UTF_8));
+    }
+
+    /**
+     * Like {@link #fromBytes(byte[])}, and also rejects a comic that is not the one requested.
+     */
+    public Comic fromBytes(byte[] body, int num) throws IOException {
+        return requireNum(fromBytes(body), num);
+    }
+
+    private static Comic requireNum(Comic comic, int num) {
+        if (comic != null && comic.getNum() != num) {
+            throw new JsonSyntaxException("Expected comic " + num + " but got " + comic.getNum());
+        }
+        return comic;
+    }
+
+    private Comic parse(Reader source) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        reader.setLenient(true);
+        try {
+            return read(reader);
+        } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            // EOFException is the JSON ending early, a body cut off by the network fails in the source instead
+            throw new JsonSyntaxException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public Comic read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Comic comic = new Comic();
+        boolean hasNum = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "month":
+                    comic.setMonth(nextString(in));
+                    break;
+                case "num":
+                    comic.setNum(in.nextInt());
+                    hasNum = true;
+                    break;
+                case "link":
+                    comic.setLink(nextString(in));
+                    break;
+                case "year":
+                    comic.setYear(nextString(in));
+                    break;
+                case "news":
+                    comic.setNews(nextString(in));
+                    break;
+                case "safe_title":
+                    comic.setSafe_title(nextString(in));
+                    break;
+                case "transcript":
+                    comic.setTranscript(nextString(in));
+                    break;
+                case "alt":
+                    comic.setAlt(nextString(in));
+                    break;
+                case "img":
+                    comic.setImg(nextString(in));
+                    break;
+                case "title":
+                    comic.setTitle(nextString(in));
+                    break;
+                case "day":
+                    comic.setDay(nextString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (!hasNum) {
+            throw new JsonSyntaxException("Comic without a num");
+        }
+        return comic;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    @Override
+    public void write(JsonWriter out, Comic comic) throws IOException {
+        if (comic == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("month").value(comic.getMonth());
+        out.name("num").value(comic.getNum());
+        out.name("link").value(comic.getLink());
+        out.name("year").value(comic.getYear());
+        out.name("news").value(comic.getNews());
+        out.name("safe_title").value(comic.getSafe_title());
+        out.name("transcript").value(comic.getTranscript());
+        out.name("alt").value(comic.getAlt());
+        out.name("img").value(comic.getImg());
+        out.name("title").value(comic.getTitle());
+        out.name("day").value(comic.getDay());
+        out.endObject();
+    }
+}
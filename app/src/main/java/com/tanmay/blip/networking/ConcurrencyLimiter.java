@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out how many requests to xkcd.com should be in flight from how the recent ones went.
+ * <p/>
+ * Every request that answers while latency is close to the best seen so far raises the limit by
+ * {@code 1 / limit}, which adds roughly one slot per round of requests. A timeout, a 5xx or a 429
+ * halves it, at most once per round trip so a burst of failures from the same round only counts once.
+ */
+public class ConcurrencyLimiter {
+
+    // A request still counts as flat while it is under this multiple of the baseline latency
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // Lets the baseline creep up a little per sample, so it follows a link that got slower for good
+    private static final double BASELINE_DRIFT = 1.01;
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final long THROUGHPUT_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Listener listener;
+
+    private double limit;
+    private int published;
+    private long baselineNanos;
+    private long lastDropNanos;
+
+    private long windowStartNanos;
+    private int windowCount;
+    private double throughput;
+
+    public interface Listener {
+        void onLimitChanged(int limit);
+    }
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Listener listener) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.listener = listener;
+        this.limit = initialLimit;
+        this.published = initialLimit;
+    }
+
+    public void onSuccess(long latencyNanos) {
+        onSuccess(latencyNanos, System.nanoTime());
+    }
+
+    public void onDropped(long latencyNanos) {
+        onDropped(latencyNanos, System.nanoTime());
+    }
+
+    synchronized void onSuccess(long latencyNanos, long nowNanos) {
+        countCompletion(nowNanos);
+        baselineNanos = baselineNanos == 0 ? latencyNanos : Math.min(latencyNanos, (long) (baselineNanos * BASELINE_DRIFT));
+        if (latencyNanos <= baselineNanos * LATENCY_TOLERANCE) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            publish();
+        }
+    }
+
+    synchronized void onDropped(long latencyNanos, long nowNanos) {
+        if (lastDropNanos != 0 && nowNanos - lastDropNanos < Math.max(baselineNanos, latencyNanos)) {
+            return;
+        }
+        lastDropNanos = nowNanos;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        publish();
+    }
+
+    private void publish() {
+        int current = (int) limit;
+        if (current != published) {
+            published = current;
+            if (listener != null) {
+                listener.onLimitChanged(current);
+            }
+        }
+    }
+
+    private void countCompletion(long nowNanos) {
+        rollWindow(nowNanos);
+        windowCount++;
+    }
+
+    private void rollWindow(long nowNanos) {
+        if (windowStartNanos == 0) {
+            windowStartNanos = nowNanos;
+            return;
+        }
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= THROUGHPUT_WINDOW) {
+            throughput = windowCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            windowStartNanos = nowNanos;
+            windowCount = 0;
+        }
+    }
+
+    /**
+     * Number of requests currently allowed in flight.
+     */
+    public synchronized int getLimit() {
+        return published;
+    }
+
+    /**
+     * Successful requests per second over the last full measuring window.
+     */
+    public synchronized double getThroughput() {
+        rollWindow(System.nanoTime());
+        return throughput;
+    }
+
+    public synchronized long getBaselineLatencyNanos() {
+        return baselineNanos;
+    }
+}
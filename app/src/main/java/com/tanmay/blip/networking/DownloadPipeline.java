@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.os.Process;
+
+import com.google.gson.JsonSyntaxException;
+import com.tanmay.blip.models.Comic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads a set of comics in three stages joined by bounded queues: fetchers on the
+ * {@link DownloadScheduler} read raw bodies, a small pool of parsers turns them into comics, and a single
+ * writer stores them in batches.
+ * <p/>
+ * A stage that falls behind fills the queue in front of it and the stage feeding it blocks, so at most
+ * the queue capacities worth of comics are held in memory however large the archive is, and a slow disk
+ * no longer ties up network slots beyond that.
+ */
+class DownloadPipeline {
+
+    // How long the writer waits for a batch to fill before committing what it has
+    private static final long WRITE_LINGER_MILLIS = 200;
+
+    private static final Fetched END_OF_BODIES = new Fetched(0, null);
+    private static final Comic END_OF_COMICS = new Comic();
+
+    private final DownloadScheduler scheduler;
+    private final int lane;
+    private final Fetcher fetcher;
+    private final Writer writer;
+    private final Rejecter rejecter;
+    private final int parsers;
+    private final int batchSize;
+    private final BlockingQueue<Fetched> bodies;
+    private final BlockingQueue<Comic> comics;
+
+    interface Fetcher {
+        /**
+         * Reads the body of one comic, or returns null if there is nothing to parse for it.
+         */
+        byte[] fetch(int num) throws IOException;
+    }
+
+    interface Writer {
+        /**
+         * Stores a batch. Only ever called from the single writer thread.
+         */
+        void write(List<Comic> comics);
+    }
+
+    interface Rejecter {
+        /**
+         * Called from a parser thread for a body that could not be read as a comic.
+         */
+        void reject(int num, Exception e);
+    }
+
+    private static class Fetched {
+        final int num;
+        final byte[] body;
+
+        Fetched(int num, byte[] body) {
+            this.num = num;
+            this.body = body;
+        }
+    }
+
+    DownloadPipeline(DownloadScheduler scheduler, int lane, Fetcher fetcher, Writer writer, Rejecter rejecter,
+                     int parsers, int bodyCapacity, int batchSize) {
+        this.scheduler = scheduler;
+        this.lane = lane;
+        this.fetcher = fetcher;
+        this.writer = writer;
+        this.rejecter = rejecter;
+        this.parsers = parsers;
+        this.batchSize = batchSize;
+        this.bodies = new ArrayBlockingQueue<>(bodyCapacity);
+        this.comics = new ArrayBlockingQueue<>(batchSize * 2);
+    }
+
+    /**
+     * Downloads, parses and stores the given comics, returning once all of them went through every stage.
+     *
+     * @return false if any of them could not be fetched
+     */
+    boolean run(List<Integer> nums) throws InterruptedException {
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        List<Thread> parserThreads = new ArrayList<>(parsers);
+        for (int i = 0; i < parsers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    parse();
+                }
+            }, "DownloadParser #" + (i + 1));
+            parserThreads.add(thread);
+            thread.start();
+        }
+        Thread writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                write();
+            }
+        }, "DownloadWriter");
+        writerThread.start();
+
+        List<Future<?>> futures = new ArrayList<>(nums.size());
+        try {
+            for (final int num : nums) {
+                futures.add(scheduler.submit(lane, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            byte[] body = fetcher.fetch(num);
+                            if (body != null) {
+                                bodies.put(new Fetched(num, body));
+                            }
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            failed.set(true);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failed.set(true);
+                        }
+                    }
+                }));
+            }
+            DownloadScheduler.awaitAll(futures);
+        } finally {
+            // Drain the later stages even when interrupted, so their threads always end
+            boolean interrupted = Thread.interrupted();
+            for (int i = 0; i < parsers; i++) {
+                bodies.put(END_OF_BODIES);
+            }
+            for (Thread thread : parserThreads) {
+                thread.join();
+            }
+            comics.put(END_OF_COMICS);
+            writerThread.join();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return !failed.get();
+    }
+
+    private void parse() {
+        while (true) {
+            Fetched fetched;
+            try {
+                fetched = bodies.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (fetched == END_OF_BODIES) {
+                return;
+            }
+            try {
+                Comic comic = ComicTypeAdapter.INSTANCE.fromBytes(fetched.body, fetched.num);
+                if (comic != null) {
+                    comics.put(comic);
+                }
+            } catch (JsonSyntaxException | IOException e) {
+                rejecter.reject(fetched.num, e);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void write() {
+        List<Comic> batch = new ArrayList<>(batchSize);
+        while (true) {
+            Comic comic;
+            try {
+                comic = comics.poll(WRITE_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                comic = END_OF_COMICS;
+            }
+            if (comic == END_OF_COMICS) {
+                flush(batch);
+                return;
+            }
+            if (comic != null) {
+                batch.add(comic);
+                comics.drainTo(batch, batchSize - batch.size());
+                // drainTo may have picked up the end marker along with real comics
+                if (batch.remove(END_OF_COMICS)) {
+                    flush(batch);
+                    return;
+                }
+            }
+            if (batch.size() >= batchSize || (comic == null && !batch.isEmpty())) {
+                flush(batch);
+            }
+        }
+    }
+
+    private void flush(List<Comic> batch) {
+        if (!batch.isEmpty()) {
+            writer.write(new ArrayList<>(batch));
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.os.Process;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one pool every download in the app runs on.
+ * <p/>
+ * At most {@link #getConcurrency()} downloads run at once, a number the {@link ConcurrencyLimiter}
+ * raises and lowers as requests succeed or fail. Waiting work is taken lane by lane, so a
+ * comic the user asked for starts before the daily check, which starts before any backfill, and work
+ * in the same lane runs in submission order.
+ * <p/>
+ * The scheduler lives as long as the process, so what the limiter and the hedger learned about the
+ * network carries over from one downloader run to the next. It is never shut down: idle threads exit
+ * on their own, so it holds no threads between downloads.
+ */
+public class DownloadScheduler {
+
+    public static final int LANE_USER = 0;
+    public static final int LANE_TODAY = 1;
+    public static final int LANE_BACKFILL = 2;
+
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int MIN_CONCURRENCY = 1;
+    private static final int MAX_CONCURRENCY = 32;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int BREAKER_FAILURES = 5;
+    private static final long BREAKER_PAUSE_MILLIS = 5000;
+    private static final int BREAKER_MAX_PAUSES = 3;
+    private static final int HEDGE_WINDOW = 100;
+    private static final int HEDGE_MIN_SAMPLES = 10;
+    private static final long HEDGE_MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static DownloadScheduler mInstance;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrencyLimiter limiter;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(BREAKER_FAILURES, BREAKER_PAUSE_MILLIS, BREAKER_MAX_PAUSES);
+    // Hedged calls wait on their copies from inside a scheduled task, so the copies need threads of their own
+    private final ExecutorService hedgeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new DownloadThreadFactory("Hedge #"));
+    private final Hedger hedger = new Hedger(hedgeExecutor, HEDGE_WINDOW, HEDGE_MIN_SAMPLES, HEDGE_MIN_DELAY_NANOS);
+    private final AtomicLong sequence = new AtomicLong();
+
+    DownloadScheduler(int initialConcurrency, int minConcurrency, int maxConcurrency) {
+        executor = new ThreadPoolExecutor(initialConcurrency, initialConcurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new DownloadThreadFactory("Download #"));
+        executor.allowCoreThreadTimeOut(true);
+        limiter = new ConcurrencyLimiter(initialConcurrency, minConcurrency, maxConcurrency, new ConcurrencyLimiter.Listener() {
+            @Override
+            public void onLimitChanged(int limit) {
+                setConcurrency(limit);
+            }
+        });
+    }
+
+    public static void create() {
+        mInstance = new DownloadScheduler(INITIAL_CONCURRENCY, MIN_CONCURRENCY, MAX_CONCURRENCY);
+    }
+
+    public static DownloadScheduler getInstance() {
+        return mInstance;
+    }
+
+    public <T> Future<T> submit(int lane, Callable<T> task) {
+        return enqueue(new Task<>(lane, sequence.getAndIncrement(), task));
+    }
+
+    public Future<?> submit(int lane, Runnable task) {
+        return enqueue(new Task<>(lane, sequence.getAndIncrement(), Executors.callable(task)));
+    }
+
+    private <T> Future<T> enqueue(Task<T> task) {
+        if (task.lane < LANE_USER || task.lane > LANE_BACKFILL) {
+            throw new IllegalArgumentException("Unknown lane " + task.lane);
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Adjusts {@link #getConcurrency()} to how the network is doing. Report every request made from a
+     * scheduled task to it.
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Shared by every scheduled request, so all of them pause together when xkcd.com is down.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Races a second copy of requests the user is waiting on against the first. Only use it for single
+     * requests on {@link #LANE_USER} or {@link #LANE_TODAY}: the copies run outside the concurrency limit.
+     */
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+    public int getConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Changes how many downloads may run at once. Downloads already running are not interrupted when
+     * the limit shrinks; no new ones start until the count drops below it. The limiter overrides this the
+     * next time its own limit changes.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        // The core size may never exceed the maximum, so the order depends on the direction
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+    }
+
+    /**
+     * Drops every waiting download and interrupts the running ones. Nothing can be submitted afterwards,
+     * so this is only for schedulers made for a single job, such as in tests.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        hedgeExecutor.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return executor.awaitTermination(timeout, unit)
+                && hedgeExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Blocks until every future is done. Tasks report their own failures, so an exception thrown by one
+     * is not rethrown here. If the waiting thread is interrupted the remaining futures are cancelled.
+     */
+    public static void awaitAll(List<? extends Future<?>> futures) throws InterruptedException {
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException | CancellationException ignored) {
+                // Failures are reported by the task itself, cancellations by whoever cancelled it
+            } catch (InterruptedException e) {
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+
+        private final int lane;
+        private final long sequence;
+
+        Task(int lane, long sequence, Callable<T> callable) {
+            super(callable);
+            this.lane = lane;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (lane != other.lane) {
+                return lane < other.lane ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static class DownloadThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DownloadThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second copy of a request that is taking longer than usual, and uses whichever answers first.
+ * <p/>
+ * The delay before the second copy is the 90th percentile of recent answers, so roughly one request in
+ * ten is hedged and a single slow connection no longer decides how long the user waits. Until enough
+ * answers have been reported to {@link #recordLatency(long)} nothing is hedged. Callers report every
+ * request, hedged or not, and for a hedged one only the copy that answered first. The copy that loses is left to finish and its result handed
+ * to {@link Call#discard(Object)}, so an abandoned exchange is never mistaken for a network failure.
+ */
+public class Hedger {
+
+    private static final double QUANTILE = 0.9;
+
+    private final Executor executor;
+    private final long[] latencies;
+    private final int minSamples;
+    private final long minDelayNanos;
+
+    private int samples;
+    private int next;
+    private volatile boolean enabled = true;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+
+    public interface Call<V> {
+        V call() throws IOException;
+
+        /**
+         * Releases the result of the copy that answered second.
+         */
+        void discard(V result);
+    }
+
+    /**
+     * @param executor      runs both copies, so it must be able to start one while the other is blocked
+     * @param window        number of recent latencies the percentile is taken over
+     * @param minSamples    latencies needed before anything is hedged
+     * @param minDelayNanos lower bound on the delay, so answers from the cache do not hedge everything
+     */
+    Hedger(Executor executor, int window, int minSamples, long minDelayNanos) {
+        if (minSamples < 1 || minSamples > window) {
+            throw new IllegalArgumentException("Expected 1 <= minSamples <= window");
+        }
+        this.executor = executor;
+        this.latencies = new long[window];
+        this.minSamples = minSamples;
+        this.minDelayNanos = minDelayNanos;
+    }
+
+    /**
+     * Runs {@code call}, and once more in parallel if it has not answered within the hedging delay. The
+     * first copy to return a result wins; an exception is only thrown once every copy that was started
+     * has failed, and then it is the last one's.
+     */
+    public <V> V run(Call<V> call) throws IOException {
+        calls.incrementAndGet();
+        BlockingQueue<Outcome<V>> outcomes = new LinkedBlockingQueue<>();
+        AtomicBoolean settled = new AtomicBoolean();
+        executor.execute(new Attempt<>(call, false, outcomes, settled));
+        int pending = 1;
+        try {
+            Outcome<V> outcome;
+            long delay = hedgeDelayNanos();
+            if (delay < 0) {
+                outcome = outcomes.take();
+            } else {
+                outcome = outcomes.poll(delay, TimeUnit.NANOSECONDS);
+                if (outcome == null) {
+                    hedged.incrementAndGet();
+                    executor.execute(new Attempt<>(call, true, outcomes, settled));
+                    pending++;
+                    outcome = outcomes.take();
+                }
+            }
+            pending--;
+            while (outcome.error != null && pending > 0) {
+                outcome = outcomes.take();
+                pending--;
+            }
+            if (outcome.error == null && outcome.hedge) {
+                won.incrementAndGet();
+            }
+            return outcome.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            // Whatever answers from here on is discarded by the attempt itself, and anything already
+            // queued is discarded here
+            settled.set(true);
+            Outcome<V> late;
+            while ((late = outcomes.poll()) != null) {
+                late.discard(call);
+            }
+        }
+    }
+
+    /**
+     * How long to wait for an answer before hedging, or -1 while too few answers have been seen.
+     */
+    synchronized long hedgeDelayNanos() {
+        if (!enabled || samples < minSamples) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(QUANTILE * samples) - 1;
+        return Math.max(minDelayNanos, sorted[index]);
+    }
+
+    /**
+     * Adds how long the server took to answer a request.
+     */
+    synchronized void recordLatency(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+    }
+
+    /**
+     * Turns hedging on or off. Latencies are still recorded while it is off, so both settings can be
+     * compared against the same server.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Calls made through {@link #run(Call)}.
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Calls that sent a second copy.
+     */
+    public long getHedgedCount() {
+        return hedged.get();
+    }
+
+    /**
+     * Calls answered by the second copy.
+     */
+    public long getWonCount() {
+        return won.get();
+    }
+
+    private static class Outcome<V> {
+
+        private final V result;
+        private final Throwable error;
+        private final boolean hedge;
+
+        Outcome(V result, Throwable error, boolean hedge) {
+            this.result = result;
+            this.error = error;
+            this.hedge = hedge;
+        }
+
+        V get() throws IOException {
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return result;
+        }
+
+        void discard(Call<V> call) {
+            if (error == null && result != null) {
+                call.discard(result);
+            }
+        }
+    }
+
+    private class Attempt<V> implements Runnable {
+
+        private final Call<V> call;
+        private final boolean hedge;
+        private final BlockingQueue<Outcome<V>> outcomes;
+        private final AtomicBoolean settled;
+
+        Attempt(Call<V> call, boolean hedge, BlockingQueue<Outcome<V>> outcomes, AtomicBoolean settled) {
+            this.call = call;
+            this.hedge = hedge;
+            this.outcomes = outcomes;
+            this.settled = settled;
+        }
+
+        @Override
+        public void run() {
+            Outcome<V> outcome;
+            try {
+                V result = call.call();
+                outcome = new Outcome<>(result, null, hedge);
+            } catch (Throwable t) {
+                outcome = new Outcome<>(null, t, hedge);
+            }
+            outcomes.add(outcome);
+            // Only one of this and the caller's drain can take the outcome back out of the queue
+            if (settled.get() && outcomes.remove(outcome)) {
+                outcome.discard(call);
+            }
+        }
+    }
+}
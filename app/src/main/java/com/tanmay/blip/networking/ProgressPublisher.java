@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.LocalBroadcastManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts stored comics for a bulk download and broadcasts {@link XKCDDownloader#DOWNLOAD_PROGRESS} at
+ * most a few times a second, however fast comics come in.
+ * <p/>
+ * Writers only bump an atomic counter; whichever one first finds the interval elapsed sends the next
+ * update, with the count, the rate since this run started and the estimated time left.
+ */
+public class ProgressPublisher {
+
+    private final Context context;
+    private final int total;
+    private final int startCount;
+    private final long startNanos;
+    private final long intervalNanos;
+
+    private final AtomicInteger count;
+    private final AtomicLong lastPublishNanos = new AtomicLong();
+    private volatile String title;
+
+    /**
+     * @param startCount comics already stored by earlier runs, counted as done but not towards the rate
+     */
+    public ProgressPublisher(Context context, int total, int startCount, int maxUpdatesPerSecond) {
+        this.context = context.getApplicationContext();
+        this.total = total;
+        this.startCount = startCount;
+        this.startNanos = System.nanoTime();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+        this.count = new AtomicInteger(startCount);
+    }
+
+    /**
+     * Records newly stored comics and broadcasts an update unless one went out less than an interval ago.
+     */
+    public void add(int comics, String lastTitle) {
+        count.addAndGet(comics);
+        title = lastTitle;
+        long now = System.nanoTime();
+        long last = lastPublishNanos.get();
+        if (now - last >= intervalNanos && lastPublishNanos.compareAndSet(last, now)) {
+            broadcast(now);
+        }
+    }
+
+    /**
+     * Broadcasts the current state right away, for the first and the last update of a run.
+     */
+    public void publish() {
+        long now = System.nanoTime();
+        lastPublishNanos.set(now);
+        broadcast(now);
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    private void broadcast(long now) {
+        int done = count.get();
+        double seconds = (now - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        double rate = seconds > 0 ? (done - startCount) / seconds : 0;
+        long eta = rate > 0 ? (long) ((total - done) / rate) : -1;
+
+        Intent intent = new Intent(XKCDDownloader.DOWNLOAD_PROGRESS);
+        intent.putExtra(XKCDDownloader.PROGRESS, total > 0 ? (double) done / total * 100 : 0);
+        intent.putExtra(XKCDDownloader.COUNT, done);
+        intent.putExtra(XKCDDownloader.TOTAL, total);
+        intent.putExtra(XKCDDownloader.RATE, rate);
+        intent.putExtra(XKCDDownloader.ETA, eta);
+        intent.putExtra(XKCDDownloader.TITLE, title);
+        LocalBroadcastManager.getInstance(context).sendBroadcast(intent);
+    }
+}
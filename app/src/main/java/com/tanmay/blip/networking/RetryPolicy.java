@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import java.util.Random;
+
+/**
+ * How often and how far apart a failed request to xkcd.com is tried again.
+ * <p/>
+ * The wait before retry {@code n} is drawn uniformly between zero and {@code base * 2^(n - 1)}, capped at
+ * the maximum, so workers that failed together do not all come back at the same moment.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, 500, 8000, new Random());
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * Total number of tries, the first one included.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Milliseconds to wait after failed attempt number {@code attempt}, counting from 1.
+     */
+    public long delayBeforeRetry(int attempt) {
+        long cap = maxDelayMillis;
+        if (attempt - 1 < 31) {
+            cap = Math.min(maxDelayMillis, baseDelayMillis << (attempt - 1));
+        }
+        return (long) (random.nextDouble() * cap);
+    }
+
+    /**
+     * Whether a response with this status is worth asking for again. Everything else, 404 included, is
+     * an answer.
+     */
+    public static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent calls for the same key into one.
+ * <p/>
+ * The first caller for a key runs the call on its own thread; anyone asking for the same key while it
+ * is still running waits for it and gets the same result or exception. Once it finishes the key is free
+ * again, so nothing is cached beyond the call itself.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> calls = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+
+    public V run(K key, final Call<V> call) throws IOException {
+        FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() throws IOException {
+                return call.call();
+            }
+        });
+        FutureTask<V> inFlight = calls.putIfAbsent(key, task);
+        if (inFlight != null) {
+            joined.incrementAndGet();
+            return await(inFlight);
+        }
+        started.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            calls.remove(key, task);
+        }
+        return await(task);
+    }
+
+    private V await(FutureTask<V> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Calls that actually ran.
+     */
+    public long getStartedCount() {
+        return started.get();
+    }
+
+    /**
+     * Callers that were handed the result of a call already in flight instead of making their own.
+     */
+    public long getJoinedCount() {
+        return joined.get();
+    }
+}
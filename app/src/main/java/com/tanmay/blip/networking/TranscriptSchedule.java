@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015, Tanmay Parikh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tanmay.blip.networking;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a comic without a transcript is worth checking again.
+ * <p/>
+ * Transcripts are mostly added in the first weeks after a comic goes up, so young comics are checked
+ * often and old ones rarely. The spacing for a comic's age doubles with every check that still found
+ * nothing, up to a maximum, so a comic that never gets a transcript costs a request a few times a year at
+ * most.
+ */
+public class TranscriptSchedule {
+
+    public static final TranscriptSchedule DEFAULT = new TranscriptSchedule(TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7),
+            TimeUnit.DAYS.toMillis(30), TimeUnit.DAYS.toMillis(180));
+
+    private static final long NEW_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long RECENT_AGE_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    private final long newSpacingMillis;
+    private final long recentSpacingMillis;
+    private final long oldSpacingMillis;
+    private final long maxSpacingMillis;
+
+    /**
+     * @param newSpacingMillis    first spacing for comics under a month old
+     * @param recentSpacingMillis first spacing for comics under a year old
+     * @param oldSpacingMillis    first spacing for anything older
+     * @param maxSpacingMillis    longest spacing however many checks came up empty
+     */
+    TranscriptSchedule(long newSpacingMillis, long recentSpacingMillis, long oldSpacingMillis, long maxSpacingMillis) {
+        this.newSpacingMillis = newSpacingMillis;
+        this.recentSpacingMillis = recentSpacingMillis;
+        this.oldSpacingMillis = oldSpacingMillis;
+        this.maxSpacingMillis = maxSpacingMillis;
+    }
+
+    /**
+     * Milliseconds until the next check of a comic published {@code ageMillis} ago, after {@code attempts}
+     * checks (counting from 1) that found no transcript.
+     */
+    public long delayAfter(long ageMillis, int attempts) {
+        long spacing;
+        if (ageMillis < NEW_AGE_MILLIS) {
+            spacing = newSpacingMillis;
+        } else if (ageMillis < RECENT_AGE_MILLIS) {
+            spacing = recentSpacingMillis;
+        } else {
+            spacing = oldSpacingMillis;
+        }
+        // Twenty doublings are past any sensible maximum and keep the shift from overflowing
+        int doublings = Math.min(Math.max(0, attempts - 1), 20);
+        return Math.min(maxSpacingMillis, spacing << doublings);
+    }
+}
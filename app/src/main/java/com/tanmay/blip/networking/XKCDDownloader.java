@@ -16,12 +16,13 @@
 
 package com.tanmay.blip.networking;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Intent;
+import android.os.IBinder;
+import android.os.Process;
 import android.support.v4.content.LocalBroadcastManager;
 
 import com.crashlytics.android.Crashlytics;
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
@@ -29,17 +30,40 @@ import com.tanmay.blip.BlipApplication;
 import com.tanmay.blip.database.DatabaseManager;
 import com.tanmay.blip.database.SharedPrefs;
 import com.tanmay.blip.models.Comic;
+import com.tanmay.blip.models.TranscriptCheck;
+import com.tanmay.blip.models.Validators;
+import com.tanmay.blip.utils.BlipUtils;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class XKCDDownloader extends IntentService {
+/**
+ * Runs download actions sent with {@link #startService} one after another on a single background thread.
+ * Their requests all share the {@link DownloadScheduler}, and overlapping requests for the same comic share
+ * one fetch.
+ */
+public class XKCDDownloader extends Service {
 
-    public static final String LATEST_URL = "http://xkcd.com/info.0.json";
-    public static final String COMICS_URL = "http://xkcd.com/%d/info.0.json";
+    public static final String XKCD_HOST = "http://xkcd.com";
+    private static final String LATEST_PATH = "/info.0.json";
+    private static final String COMIC_PATH = "/%d/info.0.json";
+    private static final String ARCHIVE_PATH = "/archive/";
 
     public static final String DOWNLOAD_PROGRESS = "com.tanmay.blip.DOWNLOAD_PROGRESS";
     public static final String DOWNLOAD_SUCCESS = "com.tanmay.blip.DOWNLOAD_SUCCESS";
@@ -49,67 +73,165 @@ public class XKCDDownloader extends IntentService {
     public static final String DOWNLOAD_ALL = "com.tanmay.blip.DOWNLOAD_ALL";
     public static final String DOWNLOAD_SPECIFIC = "com.tanmay.blip.DOWNLOAD_SPECIFIC";
     public static final String DOWNLOAD_TRANSCRIPT = "com.tanmay.blip.DOWNLOAD_TRANSCRIPT";
+    public static final String DOWNLOAD_NEW = "com.tanmay.blip.DOWNLOAD_NEW";
+    // Catches up like DOWNLOAD_NEW, then re-checks recently published comics
     public static final String DOWNLOAD_LAST_TEN = "com.tanmay.blip.DOWNLOAD_LAST_TEN";
+    // Seeds the catalogue from the archive index, reports success, then fills in details like DOWNLOAD_ALL
+    public static final String DOWNLOAD_INDEX = "com.tanmay.blip.DOWNLOAD_INDEX";
 
     public static final String COMIC_NUM = "comicNum";
     public static final String PROGRESS = "progress";
     public static final String TITLE = "title";
+    public static final String COUNT = "count";
+    public static final String TOTAL = "total";
+    public static final String RATE = "rate";
+    public static final String ETA = "eta";
+
+    private static final int BATCH_SIZE = 50;
+    private static final int PARSERS = 2;
+    private static final int BODY_QUEUE_CAPACITY = 64;
+    private static final int MAX_PROGRESS_UPDATES_PER_SECOND = 4;
+    private static final int RECENT_DAYS = 14;
+
+    private static final String UNAVAILABLE_NOT_FOUND = "not found";
+    private static final String UNAVAILABLE_MALFORMED = "malformed";
+    // A number that is not there is almost never filled in later, a broken payload sometimes gets fixed
+    private static final long NOT_FOUND_TTL_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long MALFORMED_TTL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final int MAX_TRANSCRIPT_CHECKS = 50;
+    private static final String TRANSCRIPT_FOUND = "found";
+    private static final String TRANSCRIPT_EMPTY = "empty";
+    private static final String TRANSCRIPT_NOT_MODIFIED = "not modified";
+    private static final String TRANSCRIPT_MALFORMED = "malformed";
+    private static final String TRANSCRIPT_FAILED = "failed";
+
+    // Key for the latest comic refresh, which comic numbers never collide with
+    private static final int LATEST = 0;
+
+    private static final SingleFlight<Integer, Comic> REFRESHES = new SingleFlight<>();
+    private static final SingleFlight<Integer, byte[]> BODIES = new SingleFlight<>();
+
+    // Set while downloadAll runs, since a destroyed service lets its running action finish next to a new one
+    private static final AtomicBoolean IMPORTING = new AtomicBoolean();
+
+    private static volatile String host = XKCD_HOST;
+
+    private ExecutorService executor;
+
+    /**
+     * Points every download at another server, such as a local stand-in for xkcd.com in benchmarks.
+     */
+    static void setHost(String host) {
+        XKCDDownloader.host = host;
+    }
 
-    public XKCDDownloader() {
-        super("XKCDDownloaderService");
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
     }
 
-    public XKCDDownloader(String name) {
-        super(name);
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "XKCDDownloader");
+            }
+        });
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
+    public int onStartCommand(final Intent intent, int flags, final int startId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleAction(intent);
+                } finally {
+                    // Only stops once the newest action is done, so queued ones still run
+                    stopSelf(startId);
+                }
+            }
+        });
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        // Lets the running action finish, it keeps its progress in the database either way
+        executor.shutdown();
+        super.onDestroy();
+    }
+
+    private void handleAction(Intent intent) {
         switch (intent.getAction()) {
             case DOWNLOAD_TODAY:
                 downloadToday();
                 break;
             case DOWNLOAD_ALL:
                 downloadAll();
-                break;
+                return;
             case DOWNLOAD_SPECIFIC:
                 downloadSpecific(intent.getExtras().getInt(COMIC_NUM));
                 break;
             case DOWNLOAD_TRANSCRIPT:
                 downloadAllMissingTranscripts();
                 break;
+            case DOWNLOAD_NEW:
+                downloadNew();
+                break;
             case DOWNLOAD_LAST_TEN:
-                redownloadLastTen();
+                recheckRecent();
+                break;
+            case DOWNLOAD_INDEX:
+                downloadIndex();
+                return;
+        }
+        resumeImport();
+    }
+
+    /**
+     * Finishes filling in a catalogue seeded by {@link #downloadIndex()} if that was interrupted, whichever
+     * action the app happened to start first.
+     */
+    private void resumeImport() {
+        if (DatabaseManager.getInstance().getSkeletonCount() > 0) {
+            downloadAll();
         }
     }
 
-    private void downloadSpecific(int i) {
-        Gson gson = new Gson();
-        DatabaseManager databaseManager = new DatabaseManager(this);
-        String url = String.format(COMICS_URL, i);
-        Request request = new Request.Builder().url(url).build();
+    private void downloadSpecific(final int i) {
+        if (DatabaseManager.getInstance().getUnavailableReason(i) != null) {
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+            return;
+        }
+        Future<Comic> future = DownloadScheduler.getInstance().submit(DownloadScheduler.LANE_USER, new Callable<Comic>() {
+            @Override
+            public Comic call() throws IOException {
+                return refreshComic(i, true);
+            }
+        });
         try {
-            Response response = BlipApplication.getInstance().client.newCall(request).execute();
-            if (!response.isSuccessful()) throw new IOException();
-            Comic comic = gson.fromJson(response.body().string(), Comic.class);
-            databaseManager.addComic(comic);
+            future.get();
             LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
-        } catch (IOException e) {
+        } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
+            future.cancel(true);
             LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
         }
     }
 
     private void downloadToday() {
-        DatabaseManager databaseManager = new DatabaseManager(this);
-        Gson gson = new Gson();
-        Request request = new Request.Builder().url(LATEST_URL).build();
         try {
-            Response response = BlipApplication.getInstance().client.newCall(request).execute();
-            if (!response.isSuccessful()) throw new IOException();
-            Comic comic = gson.fromJson(response.body().string(), Comic.class);
-            if (!databaseManager.comicExists(comic))
-                databaseManager.addComic(comic);
+            refreshLatest(DownloadScheduler.LANE_TODAY);
             LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
         } catch (IOException e) {
             e.printStackTrace();
@@ -117,174 +239,507 @@ public class XKCDDownloader extends IntentService {
         }
     }
 
-    private void redownloadLastTen() {
-        final Gson gson = new Gson();
-        final DatabaseManager databaseManager = new DatabaseManager(this);
+    /**
+     * Fetches every comic published since the newest one stored, however long the app went unopened.
+     */
+    private void downloadNew() {
         try {
-            Request todayReq = new Request.Builder().url(LATEST_URL).build();
-            Response response = BlipApplication.getInstance().client.newCall(todayReq).execute();
-            if (!response.isSuccessful()) throw new IOException();
-            Comic comic = gson.fromJson(response.body().string(), Comic.class);
-            final CountDownLatch latch = new CountDownLatch(10);
-            final Executor executor = Executors.newFixedThreadPool(5);
-            int num = comic.getNum();
-            for (int i = num - 9; i <= num; i++) {
-                final int index = i;
-                executor.execute(new Runnable() {
+            downloadNewSinceLocalMax();
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
+        } catch (IOException e) {
+            e.printStackTrace();
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+        }
+    }
+
+    /**
+     * Reads the latest comic once and fetches the range between it and the newest stored comic in parallel.
+     *
+     * @return the number of the latest comic
+     */
+    private int downloadNewSinceLocalMax() throws IOException {
+        final DatabaseManager databaseManager = DatabaseManager.getInstance();
+        int localMax = databaseManager.getMax();
+        int latest = refreshLatest(DownloadScheduler.LANE_TODAY);
+        List<Integer> missing = databaseManager.getMissingNums(localMax + 1, latest - 1);
+        boolean fetchedAll = downloadMissing(missing, DownloadScheduler.LANE_TODAY, new DownloadPipeline.Writer() {
+            @Override
+            public void write(List<Comic> comics) {
+                databaseManager.upsertComics(comics);
+            }
+        });
+        if (!fetchedAll) {
+            throw new IOException("Could not fetch every new comic");
+        }
+        return latest;
+    }
+
+    /**
+     * Catches up on new comics, then re-checks the ones published in the last {@link #RECENT_DAYS} days,
+     * since fixes to the title, alt text or transcript mostly land shortly after a comic goes up. The
+     * re-check uses conditional requests, so comics that did not change cost no body or write.
+     */
+    private void recheckRecent() {
+        try {
+            int latest = downloadNewSinceLocalMax();
+            Calendar since = Calendar.getInstance();
+            since.add(Calendar.DAY_OF_YEAR, -RECENT_DAYS);
+            List<Integer> recent = DatabaseManager.getInstance().getNumsPublishedSince(
+                    since.get(Calendar.DAY_OF_MONTH), since.get(Calendar.MONTH) + 1, since.get(Calendar.YEAR));
+            // The latest comic was just refreshed through its own endpoint
+            recent.remove(Integer.valueOf(latest));
+
+            final AtomicBoolean failed = new AtomicBoolean();
+            List<Future<?>> futures = new ArrayList<>(recent.size());
+            for (final int index : recent) {
+                futures.add(DownloadScheduler.getInstance().submit(DownloadScheduler.LANE_BACKFILL, new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            String url = String.format(COMICS_URL, index);
-                            Request request = new Request.Builder().url(url).build();
-                            Response response = BlipApplication.getInstance().client.newCall(request).execute();
-                            if (!response.isSuccessful()) throw new IOException();
-                            String responseBody = response.body().string();
-                            Comic comic = null;
-                            try {
-                                comic = gson.fromJson(responseBody, Comic.class);
-                            } catch (JsonSyntaxException e) {
-                                Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
-                            }
-                            if (comic != null) {
-                                if (databaseManager.comicExists(comic)) {
-                                    databaseManager.updateComic(comic);
-                                } else {
-                                    databaseManager.addComic(comic);
-                                }
-                            }
+                            refreshComic(index, false);
+                        } catch (JsonSyntaxException e) {
+                            Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
                         } catch (IOException e) {
                             e.printStackTrace();
-                            LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
-                        } finally {
-                            latch.countDown();
+                            failed.set(true);
                         }
                     }
-                });
+                }));
             }
 
             try {
-                latch.await();
+                DownloadScheduler.awaitAll(futures);
             } catch (InterruptedException e) {
-                LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+                failed.set(true);
             }
 
             SharedPrefs.getInstance().setLastRedownladTime(System.currentTimeMillis());
-            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(failed.get() ? DOWNLOAD_FAIL : DOWNLOAD_SUCCESS));
 
         } catch (IOException e) {
             LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
         }
     }
 
+    /**
+     * Checks comics that still have no transcript, but only the ones due under
+     * {@link TranscriptSchedule#DEFAULT} and at most {@link #MAX_TRANSCRIPT_CHECKS} per run. The outcome of
+     * each check is recorded together with when the comic is due again.
+     */
     private void downloadAllMissingTranscripts() {
-        final Gson gson = new Gson();
-        final DatabaseManager databaseManager = new DatabaseManager(this);
-        List<Integer> nums = databaseManager.getAllMissingTranscripts();
-
-        final CountDownLatch latch = new CountDownLatch(nums.size());
-        final Executor executor = Executors.newFixedThreadPool(nums.size() / 2);
-        for (int i : nums) {
-            final int index = i;
-            executor.execute(new Runnable() {
+        final DatabaseManager databaseManager = DatabaseManager.getInstance();
+        final long now = System.currentTimeMillis();
+        List<TranscriptCheck> checks = databaseManager.getTranscriptChecksDue(now, MAX_TRANSCRIPT_CHECKS);
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>(checks.size());
+        for (final TranscriptCheck check : checks) {
+            futures.add(DownloadScheduler.getInstance().submit(DownloadScheduler.LANE_BACKFILL, new Runnable() {
                 @Override
                 public void run() {
+                    int index = check.getNum();
+                    String outcome;
                     try {
-                        String url = String.format(COMICS_URL, index);
-                        Request request = new Request.Builder().url(url).build();
-                        Response response = BlipApplication.getInstance().client.newCall(request).execute();
-                        if (!response.isSuccessful()) throw new IOException();
-                        String responseBody = response.body().string();
-                        Comic comic = null;
-                        try {
-                            comic = gson.fromJson(responseBody, Comic.class);
-                        } catch (JsonSyntaxException e) {
-                            Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
-                        }
-                        if (comic != null) {
-                            databaseManager.updateComic(comic);
+                        Comic comic = refreshComic(index, false);
+                        if (comic == null) {
+                            outcome = TRANSCRIPT_NOT_MODIFIED;
+                        } else if (comic.getTranscript() != null && !comic.getTranscript().isEmpty()) {
+                            outcome = TRANSCRIPT_FOUND;
+                        } else {
+                            outcome = TRANSCRIPT_EMPTY;
                         }
+                    } catch (JsonSyntaxException e) {
+                        Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
+                        outcome = TRANSCRIPT_MALFORMED;
                     } catch (IOException e) {
                         e.printStackTrace();
-                        LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
-                    } finally {
-                        latch.countDown();
+                        failed.set(true);
+                        // Says nothing about the transcript, so the comic stays due without using up an attempt
+                        databaseManager.recordTranscriptCheck(index, check.getAttempts(), TRANSCRIPT_FAILED, now, now);
+                        return;
                     }
+                    int attempts = check.getAttempts() + 1;
+                    long delay = TranscriptSchedule.DEFAULT.delayAfter(ageMillis(check, now), attempts);
+                    databaseManager.recordTranscriptCheck(index, attempts, outcome, now, now + delay);
                 }
-            });
+            }));
         }
 
         try {
-            latch.await();
+            DownloadScheduler.awaitAll(futures);
         } catch (InterruptedException e) {
-            LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+            failed.set(true);
         }
         SharedPrefs.getInstance().setLastTranscriptCheckTime(System.currentTimeMillis());
-        LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
+        LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(failed.get() ? DOWNLOAD_FAIL : DOWNLOAD_SUCCESS));
+
+    }
 
+    /**
+     * Seeds the catalogue with the number, title and date of every comic from the archive page, so the
+     * feed and search work after a single request, and reports success. The rest of each comic is then
+     * filled in by {@link #downloadAll()}. If the archive cannot be read, the full download runs alone.
+     */
+    private void downloadIndex() {
+        Future<Integer> future = DownloadScheduler.getInstance().submit(DownloadScheduler.LANE_TODAY, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                Response response = execute(new Request.Builder().url(host + ARCHIVE_PATH).build(), false);
+                requireSuccess(response);
+                List<Comic> comics;
+                Reader reader = response.body().charStream();
+                try {
+                    comics = ArchiveParser.parse(reader);
+                } finally {
+                    reader.close();
+                }
+                if (comics.isEmpty()) {
+                    throw new IOException("No comics on the archive page");
+                }
+                return DatabaseManager.getInstance().insertSkeletons(comics);
+            }
+        });
+        try {
+            if (future.get() > 0) {
+                // Everything from the first comic on now needs its details
+                SharedPrefs.getInstance().setArchiveCheckpoint(0);
+            }
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            future.cancel(true);
+        }
+        downloadAll();
     }
 
+    private static long ageMillis(TranscriptCheck check, long now) {
+        Calendar published = Calendar.getInstance();
+        published.clear();
+        published.set(check.getYear(), check.getMonth() - 1, check.getDay());
+        return now - published.getTimeInMillis();
+    }
+
+    /**
+     * Fetches every comic that is not stored yet, unless another run is already at it. A second run would
+     * only fetch the same comics and race the first on the checkpoint, and the first one reports for both.
+     */
     private void downloadAll() {
-        final Gson gson = new Gson();
-        final DatabaseManager databaseManager = new DatabaseManager(this);
-        Request request = new Request.Builder().url(LATEST_URL).build();
+        if (!IMPORTING.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            final Response response = BlipApplication.getInstance().client.newCall(request).execute();
-            if (!response.isSuccessful()) throw new IOException();
-            Comic comic = gson.fromJson(response.body().string(), Comic.class);
+            downloadAllMissing();
+        } finally {
+            IMPORTING.set(false);
+        }
+    }
+
+    private void downloadAllMissing() {
+        final DatabaseManager databaseManager = DatabaseManager.getInstance();
+        try {
+            final int num = refreshLatest(DownloadScheduler.LANE_TODAY);
+            int checkpoint = Math.min(SharedPrefs.getInstance().getArchiveCheckpoint(), num);
+            // Numbers marked unavailable do not hold the checkpoint back, so their retries are looked up apart
+            List<Integer> missing = databaseManager.getExpiredUnavailableNums(checkpoint);
+            missing.addAll(databaseManager.getMissingNums(checkpoint + 1, num));
+            final ConcurrentSkipListSet<Integer> remaining = new ConcurrentSkipListSet<>(missing);
+
+            // A resumed download starts from what earlier runs already stored
+            final ProgressPublisher progress = new ProgressPublisher(this, num, num - missing.size(), MAX_PROGRESS_UPDATES_PER_SECOND);
+            progress.publish();
+
+            boolean fetchedAll = downloadMissing(missing, DownloadScheduler.LANE_BACKFILL, new DownloadPipeline.Writer() {
+                @Override
+                public void write(List<Comic> comics) {
+                    writeBatch(databaseManager, comics, num, remaining, progress);
+                }
+            });
 
-            final int num = comic.getNum();
-            final CountDownLatch latch = new CountDownLatch(num);
-            final Executor executor = Executors.newFixedThreadPool(10);
+            // Numbers found to be unavailable on the way are as done as stored ones
+            int unavailable = 0;
+            for (int index : databaseManager.getUnavailableNums()) {
+                if (remaining.remove(index)) {
+                    unavailable++;
+                }
+            }
+            if (unavailable > 0) {
+                progress.add(unavailable, null);
+            }
+            if (remaining.isEmpty()) {
+                SharedPrefs.getInstance().setArchiveCheckpoint(num);
+            }
+            progress.publish();
 
-            for (int i = 1; i <= num; i++) {
-                final int index = i;
-                executor.execute(new Runnable() {
+            // Each comic already used up its retries, so one failure report for the whole run is enough
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(fetchedAll ? DOWNLOAD_SUCCESS : DOWNLOAD_FAIL));
+        } catch (IOException e) {
+            e.printStackTrace();
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+        }
+    }
 
+    /**
+     * Fetches comics that are not stored yet through a {@link DownloadPipeline} on the given lane. Numbers
+     * that answer 404 or do not parse are marked unavailable, so later runs skip them.
+     *
+     * @return false if any of them could not be fetched
+     */
+    private boolean downloadMissing(List<Integer> nums, int lane, DownloadPipeline.Writer writer) throws IOException {
+        DownloadPipeline pipeline = new DownloadPipeline(DownloadScheduler.getInstance(), lane, new DownloadPipeline.Fetcher() {
+            @Override
+            public byte[] fetch(final int index) throws IOException {
+                return BODIES.run(index, new SingleFlight.Call<byte[]>() {
                     @Override
-                    public void run() {
-                        try {
-                            if (index != 404) {
-                                String url = String.format(COMICS_URL, index);
-                                Request newReq = new Request.Builder().url(url).build();
-                                Response newResp = BlipApplication.getInstance().client.newCall(newReq).execute();
-                                if (!newResp.isSuccessful()) throw new IOException();
-                                String resp = newResp.body().string();
-                                Comic comic1 = null;
-                                try {
-                                    comic1 = gson.fromJson(resp, Comic.class);
-                                } catch (JsonSyntaxException e) {
-                                    Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
-                                }
-                                if (comic1 != null) {
-                                    databaseManager.addComic(comic1);
-                                    double progress = ((double) databaseManager.getCount() / num) * 100;
-                                    Intent intent = new Intent(DOWNLOAD_PROGRESS);
-                                    intent.putExtra(PROGRESS, progress);
-                                    intent.putExtra(TITLE, comic1.getTitle());
-                                    LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(intent);
-                                }
-                            }
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            LocalBroadcastManager.getInstance(XKCDDownloader.this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
-                        } finally {
-                            latch.countDown();
+                    public byte[] call() throws IOException {
+                        Response response = execute(new Request.Builder().url(urlOf(index)).build(), false);
+                        if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+                            response.body().close();
+                            DatabaseManager.getInstance().markUnavailable(index, UNAVAILABLE_NOT_FOUND, NOT_FOUND_TTL_MILLIS);
+                            return null;
                         }
+                        requireSuccess(response);
+                        return response.body().bytes();
                     }
                 });
             }
+        }, writer, new DownloadPipeline.Rejecter() {
+            @Override
+            public void reject(int index, Exception e) {
+                Crashlytics.log(1, "XKCDDownloader", e.getMessage() + " POS:" + index);
+                DatabaseManager.getInstance().markUnavailable(index, UNAVAILABLE_MALFORMED, MALFORMED_TTL_MILLIS);
+            }
+        }, PARSERS, BODY_QUEUE_CAPACITY, BATCH_SIZE);
+        try {
+            return pipeline.run(nums);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
 
+    /**
+     * Brings the newest comic up to date on the given lane and waits for it, since everything else is
+     * keyed off its number.
+     */
+    private int refreshLatest(int lane) throws IOException {
+        Future<Comic> future = DownloadScheduler.getInstance().submit(lane, new Callable<Comic>() {
+            @Override
+            public Comic call() throws IOException {
+                return refreshComic(LATEST, true);
+            }
+        });
+        try {
+            Comic latest = future.get();
+            // Not modified, so the newest stored comic is still the latest one
+            return latest != null ? latest.getNum() : DatabaseManager.getInstance().getMax();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String urlOf(int num) {
+        return host + (num == LATEST ? LATEST_PATH : String.format(COMIC_PATH, num));
+    }
+
+    /**
+     * Refreshes a comic, or {@link #LATEST}, joining a refresh of the same comic that is already running
+     * instead of starting another one. Pass {@code hedged} when the user is waiting on this one comic. A
+     * comic that answers 404 or does not parse is marked unavailable before the error is passed on.
+     */
+    private Comic refreshComic(final int num, final boolean hedged) throws IOException {
+        return REFRESHES.run(num, new SingleFlight.Call<Comic>() {
+            @Override
+            public Comic call() throws IOException {
+                try {
+                    return refreshComic(urlOf(num), num, hedged);
+                } catch (FileNotFoundException e) {
+                    if (num != LATEST) {
+                        DatabaseManager.getInstance().markUnavailable(num, UNAVAILABLE_NOT_FOUND, NOT_FOUND_TTL_MILLIS);
+                    }
+                    throw e;
+                } catch (JsonSyntaxException e) {
+                    if (num != LATEST) {
+                        DatabaseManager.getInstance().markUnavailable(num, UNAVAILABLE_MALFORMED, MALFORMED_TTL_MILLIS);
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads a comic unless the stored copy from the same URL is still current, and stores it together
+     * with the validators the server sent. Returns the comic that was stored, or null when the server
+     * answered 304 Not Modified and nothing was transferred or written.
+     */
+    private Comic refreshComic(String url, int num, boolean hedged) throws IOException {
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        Request.Builder builder = new Request.Builder().url(url);
+        Validators validators = databaseManager.getValidators(url);
+        if (validators != null) {
+            if (validators.getETag() != null) {
+                builder.header("If-None-Match", validators.getETag());
+            }
+            if (validators.getLastModified() != null) {
+                builder.header("If-Modified-Since", validators.getLastModified());
+            }
+        }
+        Response response = execute(builder.build(), hedged);
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            response.body().close();
+            return null;
+        }
+        if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+            response.body().close();
+            throw new FileNotFoundException(url);
+        }
+        requireSuccess(response);
+        // The latest comic is the only one whose number is not known up front
+        Comic comic = num == LATEST ? ComicTypeAdapter.INSTANCE.fromBody(response.body())
+                : ComicTypeAdapter.INSTANCE.fromBody(response.body(), num);
+        if (comic == null) {
+            throw new JsonSyntaxException("Empty body from " + url);
+        }
+        databaseManager.upsertComic(comic);
+        databaseManager.putValidators(url, response.header("ETag"), response.header("Last-Modified"));
+        return comic;
+    }
+
+    /**
+     * Runs a call, trying again with {@link RetryPolicy#DEFAULT} after network errors, 5xx and 429. The
+     * last response or error is handed back once the retries run out or the circuit breaker gives up.
+     * Each attempt of a {@code hedged} call goes through the scheduler's {@link Hedger}.
+     */
+    private Response execute(Request request, boolean hedged) throws IOException {
+        CircuitBreaker breaker = DownloadScheduler.getInstance().getCircuitBreaker();
+        RetryPolicy policy = RetryPolicy.DEFAULT;
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquire();
+            Response response;
             try {
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new IOException(e);
+                response = hedged ? executeHedged(request) : executeOnce(request, new AtomicBoolean());
+            } catch (IOException e) {
+                breaker.onFailure();
+                if (attempt >= policy.getMaxAttempts() || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                backOff(policy.delayBeforeRetry(attempt));
+                continue;
+            }
+            if (!RetryPolicy.isRetryable(response.code())) {
+                breaker.onSuccess();
+                return response;
+            }
+            breaker.onFailure();
+            if (attempt >= policy.getMaxAttempts()) {
+                return response;
             }
+            response.body().close();
+            backOff(Math.max(policy.delayBeforeRetry(attempt), retryAfterMillis(response)));
+        }
+    }
 
-            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_SUCCESS));
+    private static long retryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null && BlipUtils.isNumeric(retryAfter.trim())) {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        }
+        return 0;
+    }
+
+    private static void backOff(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Runs a call once, racing a second copy against it if it is slower than usual.
+     */
+    private Response executeHedged(final Request request) throws IOException {
+        final AtomicBoolean answered = new AtomicBoolean();
+        return DownloadScheduler.getInstance().getHedger().run(new Hedger.Call<Response>() {
+            @Override
+            public Response call() throws IOException {
+                return executeOnce(request, answered);
+            }
+
+            @Override
+            public void discard(Response response) {
+                try {
+                    response.body().close();
+                } catch (IOException ignored) {
+                    // Nothing was read from it
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a call once and tells the limiter how long the server took to answer, so the number of parallel
+     * downloads follows the link. Answers served from the local cache say nothing about the link and are
+     * not reported. The hedger learns the same latency, but only from the first copy of a request to set
+     * {@code answered}, so a hedged request counts once and a losing copy does not skew the percentile.
+     */
+    private Response executeOnce(Request request, AtomicBoolean answered) throws IOException {
+        ConcurrencyLimiter limiter = DownloadScheduler.getInstance().getLimiter();
+        Hedger hedger = DownloadScheduler.getInstance().getHedger();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = BlipApplication.getInstance().client.newCall(request).execute();
         } catch (IOException e) {
-            e.printStackTrace();
-            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(DOWNLOAD_FAIL));
+            limiter.onDropped(System.nanoTime() - start);
+            throw e;
+        }
+        long latency = System.nanoTime() - start;
+        if (response.code() == 429 || response.code() >= 500) {
+            limiter.onDropped(latency);
+        } else if (response.networkResponse() != null) {
+            limiter.onSuccess(latency);
+            if (answered.compareAndSet(false, true)) {
+                hedger.recordLatency(latency);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Throws for an answer that is not a 2xx, closing its body first so the connection goes back to the
+     * pool instead of leaking.
+     */
+    private static void requireSuccess(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            response.body().close();
+            throw new IOException("Unexpected code " + response.code() + " for " + response.request().urlString());
+        }
+    }
+
+    /**
+     * Stores a batch and moves the checkpoint up to just below the lowest number still outstanding, so an
+     * interrupted download picks up from there next time.
+     */
+    private void writeBatch(DatabaseManager databaseManager, List<Comic> comics, int total, SortedSet<Integer> remaining,
+                            ProgressPublisher progress) {
+        if (comics.isEmpty()) {
+            return;
+        }
+        databaseManager.upsertComics(comics);
+        synchronized (remaining) {
+            for (Comic comic : comics) {
+                remaining.remove(comic.getNum());
+            }
+            SharedPrefs.getInstance().setArchiveCheckpoint(remaining.isEmpty() ? total : remaining.first() - 1);
         }
+        progress.add(comics.size(), comics.get(comics.size() - 1).getTitle());
     }
 
 }
@@ -1,71 +0,0 @@
-/*
- * Copyright 2015, Tanmay Parikh
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.tanmay.blip.views;
-
-import android.support.v7.widget.RecyclerView;
-import android.support.v7.widget.StaggeredGridLayoutManager;
-
-/**
- * Created By ssins
- * GitHub: https://github.com/ssinss
- * Original Gist: https://gist.github.com/ssinss/e06f12ef66c51252563e
- */
-public abstract class EndlessRecyclerOnScrollListener extends RecyclerView.OnScrollListener {
-    public static String TAG = EndlessRecyclerOnScrollListener.class.getSimpleName();
-    int firstVisibleItem, visibleItemCount, totalItemCount;
-    private int previousTotal = 0; // The total number of items in the dataset after the last load
-    private boolean loading = true; // True if we are still waiting for the last set of data to load.
-    private int visibleThreshold = 4; // The minimum amount of items to have below your current scroll position before loading more.
-    private int current_page = 1;
-
-    private StaggeredGridLayoutManager mGridLayoutManager;
-
-    public EndlessRecyclerOnScrollListener(StaggeredGridLayoutManager gridLayoutManager) {
-        this.mGridLayoutManager = gridLayoutManager;
-    }
-
-    @Override
-    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
-        super.onScrolled(recyclerView, dx, dy);
-
-        visibleItemCount = recyclerView.getChildCount();
-        totalItemCount = mGridLayoutManager.getItemCount();
-        int[] items = new int[3];
-        mGridLayoutManager.findFirstVisibleItemPositions(items);
-        firstVisibleItem = items[0];
-
-        if (loading) {
-            if (totalItemCount > previousTotal) {
-                loading = false;
-                previousTotal = totalItemCount;
-            }
-        }
-        if (!loading && (totalItemCount - visibleItemCount)
-                <= (firstVisibleItem + visibleThreshold)) {
-            // End has been reached
-
-            // Do something
-            current_page++;
-
-            onLoadMore(current_page);
-
-            loading = true;
-        }
-    }
-
-    public abstract void onLoadMore(int current_page);
-}